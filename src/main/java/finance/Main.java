@@ -1,9 +1,18 @@
 package finance;
 
 import finance.cli.CommandLoop;
+import finance.tools.CdsTraining;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--follow")) {
+            new CommandLoop(args.length > 1 ? args[1] : "data.dat", true).run();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--cds-training")) {
+            CdsTraining.run();
+            return;
+        }
         new CommandLoop().run();
     }
 }
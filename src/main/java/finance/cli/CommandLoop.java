@@ -3,13 +3,24 @@ package finance.cli;
 import finance.domain.TransactionType;
 import finance.domain.User;
 import finance.service.AuthService;
+import finance.service.ExportService;
 import finance.service.FinanceService;
 import finance.service.FileStorage;
+import finance.service.FootprintService;
+import finance.service.PasswordHasher;
+import finance.service.SessionCache;
+import finance.service.SnapshotFollower;
 import finance.service.UserStore;
+import finance.service.query.QueryResult;
 
+import java.io.BufferedReader;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -18,88 +29,202 @@ public class CommandLoop {
 
     private static final String USERS_DATA_FILE = "data.dat";
     private static final String DEFAULT_STATS_FILE = "stats.txt";
+    private static final String DEFAULT_WALLETS_DIR = "wallets";
 
     private final UserStore store = new UserStore();
-    private final AuthService auth = new AuthService(store);
-    private final FinanceService finance = new FinanceService();
-    private final FileStorage storage = new FileStorage(USERS_DATA_FILE);
+    private final String usersDataFile;
+    private final boolean follow;
+    private final PasswordHasher hasher;
+
+    // Сервисы и данные создаются при первом обращении: команды вроде help и exit не платят за них на старте
+    private AuthService auth;
+    private FinanceService finance;
+    private FileStorage storage;
+    private ExportService export;
+    private FootprintService footprint;
+    private SnapshotFollower follower;
+    private boolean loaded;
 
     private boolean statsToFile = false;
     private String statsFilePath = DEFAULT_STATS_FILE;
 
-    public void run() {
-        store.replaceAll(storage.loadUsersOrEmpty());
+    public CommandLoop() {
+        this(USERS_DATA_FILE);
+    }
 
+    public CommandLoop(String usersDataFile) {
+        this(usersDataFile, false);
+    }
+
+    /** {@code follow = true} — read-only режим: данные основного процесса читаются из его файлов и не сохраняются. */
+    public CommandLoop(String usersDataFile, boolean follow) {
+        this(usersDataFile, follow, null);
+    }
+
+    /** {@code hasher} — свой {@link PasswordHasher} (например, с другой стоимостью KDF); {@code null} — по умолчанию. */
+    public CommandLoop(String usersDataFile, boolean follow, PasswordHasher hasher) {
+        this.usersDataFile = usersDataFile;
+        this.follow = follow;
+        this.hasher = hasher;
+    }
+
+    public void run() {
         System.out.println("Personal Finance Manager (CLI)");
+        if (follow) {
+            System.out.println("Read-only follower of: " + usersDataFile);
+        }
         System.out.println("Type 'help' to see commands.");
 
-        try (Scanner scanner = new Scanner(System.in)) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in))) {
             while (true) {
                 System.out.print(prompt());
 
-                if (!scanner.hasNextLine()) {
+                String line = in.readLine();
+                if (line == null) {
                     System.out.println();
                     break;
                 }
 
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
-
-                CommandResult r = handle(line);
+                CommandResult r = execute(line);
                 if (r == CommandResult.EXIT) break;
             }
+        } catch (IOException e) {
+            System.out.println("ERROR: cannot read input: " + e.getMessage());
         }
 
-        storage.saveUsers(store.snapshot());
+        save();
         System.out.println("Bye!");
     }
 
+    public void load() {
+        loaded = true;
+        if (follow) {
+            follower().refresh();
+            return;
+        }
+        store.replaceAll(storage().loadUsersOrEmpty());
+    }
+
+    /** Сохраняет данные; если они ещё не загружались, менять было нечего и файл не трогается. */
+    public void save() {
+        if (follow || !loaded) return;
+        finance().materializeRecurring(store.allUsers());
+        storage().saveUsers(store.snapshot());
+    }
+
+    public CommandResult execute(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) return CommandResult.CONTINUE;
+        return handle(trimmed);
+    }
+
     private String prompt() {
-        return auth.currentUser().map(u -> u.getLogin() + "> ").orElse("> ");
+        String p = currentUser().map(u -> u.getLogin() + "> ").orElse("> ");
+        return follow ? "(follower) " + p : p;
+    }
+
+    private UserStore store() {
+        if (!loaded) load();
+        return store;
+    }
+
+    private AuthService auth() {
+        if (auth == null) {
+            auth = hasher == null ? new AuthService(store()) : new AuthService(store(), hasher, new SessionCache());
+        }
+        return auth;
+    }
+
+    private Optional<User> currentUser() {
+        return auth == null ? Optional.empty() : auth.currentUser();
+    }
+
+    private FinanceService finance() {
+        if (finance == null) finance = new FinanceService();
+        return finance;
+    }
+
+    private FileStorage storage() {
+        if (storage == null) storage = new FileStorage(usersDataFile);
+        return storage;
+    }
+
+    private ExportService export() {
+        if (export == null) export = new ExportService();
+        return export;
+    }
+
+    private FootprintService footprint() {
+        if (footprint == null) footprint = new FootprintService();
+        return footprint;
+    }
+
+    private SnapshotFollower follower() {
+        if (follower == null) follower = new SnapshotFollower(storage(), store);
+        return follower;
     }
 
     private CommandResult handle(String line) {
         String[] parts = line.split("\\s+");
         String cmd = parts[0].toLowerCase(Locale.ROOT);
 
+        if (follow) {
+            loaded = true;
+            if (follower().refresh() && auth != null) auth.refreshCurrentUser();
+            if (isWriteCommand(cmd, parts)) {
+                System.out.println("Read-only follower: '" + cmd + "' is not available here.");
+                return CommandResult.CONTINUE;
+            }
+        }
+
         switch (cmd) {
             case "help" -> {
                 printHelp();
                 return CommandResult.CONTINUE;
             }
             case "exit" -> {
-                storage.saveUsers(store.snapshot());
+                save();
                 return CommandResult.EXIT;
             }
+            case "save" -> {
+                save();
+                System.out.println("Data saved.");
+                return CommandResult.CONTINUE;
+            }
 
             case "register" -> {
                 if (parts.length < 3) {
                     System.out.println("Usage: register <login> <password>");
                     return CommandResult.CONTINUE;
                 }
-                var res = auth.register(parts[1], parts[2]);
+                var res = auth().register(parts[1], parts[2]);
                 System.out.println(res.message());
                 return CommandResult.CONTINUE;
             }
 
             case "login" -> {
                 if (parts.length < 3) {
-                    System.out.println("Usage: login <login> <password>");
+                    System.out.println("Usage: login <login> <password> | login --token <token>");
                     return CommandResult.CONTINUE;
                 }
-                var res = auth.login(parts[1], parts[2]);
+                var res = "--token".equals(parts[1])
+                        ? auth().loginWithToken(parts[2])
+                        : auth().login(parts[1], parts[2]);
                 System.out.println(res.message());
+                if (res.success() && !"--token".equals(parts[1])) {
+                    auth().currentSessionToken().ifPresent(t -> System.out.println("Session token: " + t));
+                }
                 return CommandResult.CONTINUE;
             }
 
             case "logout" -> {
-                auth.logout();
+                if (auth != null) auth.logout();
                 System.out.println("Logged out.");
                 return CommandResult.CONTINUE;
             }
 
             case "whoami" -> {
-                System.out.println(auth.currentUser()
+                System.out.println(currentUser()
                         .map(u -> "You are logged in as: " + u.getLogin())
                         .orElse("You are not logged in."));
                 return CommandResult.CONTINUE;
@@ -110,6 +235,10 @@ public class CommandLoop {
                 return CommandResult.CONTINUE;
             }
 
+            case "memory" -> {
+                return requireLogin(line, this::handleMemory);
+            }
+
             case "income" -> {
                 return requireLogin(line, this::handleIncome);
             }
@@ -122,6 +251,18 @@ public class CommandLoop {
             case "stats" -> {
                 return requireLogin(line, this::handleStats);
             }
+            case "export" -> {
+                return requireLogin(line, this::handleExport);
+            }
+            case "query" -> {
+                return requireLogin(line, this::handleQuery);
+            }
+            case "wallet" -> {
+                return requireLogin(line, this::handleWallet);
+            }
+            case "recurring" -> {
+                return requireLogin(line, this::handleRecurring);
+            }
 
             default -> {
                 System.out.println("Unknown command: " + cmd + ". Type 'help'.");
@@ -130,6 +271,68 @@ public class CommandLoop {
         }
     }
 
+    /** Обычный пользователь видит только свой кошелёк; все пользователи и итоги — только в режиме follower. */
+    private CommandResult handleMemory(User user, String line) {
+        String[] parts = line.split("\\s+");
+        int top = Integer.MAX_VALUE;
+        if (parts.length == 3 && parts[1].equals("--top")) {
+            try {
+                top = Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                top = -1;
+            }
+        }
+        if (top < 0 || (parts.length != 1 && parts.length != 3)) {
+            System.out.println("Usage: memory [--top <n>]");
+            return CommandResult.CONTINUE;
+        }
+
+        // Доля data.dat считается по всем пользователям, поэтому отчёт строится целиком и затем фильтруется
+        var r = footprint().report(store().allUsers(), storage().dataFileBytes());
+        var lines = follow ? r.lines() : r.lines().stream().filter(l -> l.login().equals(user.getLogin())).toList();
+        System.out.println(String.format(Locale.ROOT, "%-16s %-7s %12s %10s %6s %9s %10s %13s",
+                "login", "storage", "transactions", "heap~", "cats", "comments~", "mapped log", "data share~"));
+        int shown = 0;
+        for (var l : lines) {
+            if (shown++ >= top) break;
+            System.out.println(String.format(Locale.ROOT, "%-16s %-7s %12d %10s %6d %9d %10s %13s",
+                    l.login(), l.mapped() ? "mapped" : "heap", l.transactions(), bytes(l.heapBytes()),
+                    l.distinctCategories(), l.distinctComments(), bytes(l.mappedLogBytes()), bytes(l.dataFileShare())));
+        }
+        if (shown > top) {
+            System.out.println("  ... " + (lines.size() - top) + " more");
+        }
+
+        if (follow) {
+            System.out.println("Total: " + r.lines().size() + " users, " + r.transactions() + " transactions, heap~ "
+                    + bytes(r.heapBytes()) + ", " + r.distinctCategories() + " distinct categories, ~"
+                    + r.distinctComments() + " distinct comments");
+            System.out.println("On disk: " + storage().getFile() + " " + bytes(r.dataFileBytes())
+                    + ", mapped logs " + bytes(r.mappedLogBytes()));
+        }
+
+        Runtime rt = Runtime.getRuntime();
+        System.out.println("JVM heap: used " + bytes(rt.totalMemory() - rt.freeMemory())
+                + ", committed " + bytes(rt.totalMemory()) + ", max " + bytes(rt.maxMemory()));
+        return CommandResult.CONTINUE;
+    }
+
+    private static String bytes(long b) {
+        if (b < 1024) return b + " B";
+        if (b < 1024 * 1024) return String.format(Locale.ROOT, "%.1f KB", b / 1024.0);
+        if (b < 1024L * 1024 * 1024) return String.format(Locale.ROOT, "%.1f MB", b / (1024.0 * 1024));
+        return String.format(Locale.ROOT, "%.2f GB", b / (1024.0 * 1024 * 1024));
+    }
+
+    private boolean isWriteCommand(String cmd, String[] parts) {
+        return switch (cmd) {
+            case "register", "income", "expense", "budget", "save" -> true;
+            case "recurring" -> parts.length < 2 || !parts[1].equalsIgnoreCase("list");
+            case "wallet" -> parts.length > 1;
+            default -> false;
+        };
+    }
+
     private void handleStatsOut(String line) {
         String[] parts = line.split("\\s+");
         if (parts.length == 1) {
@@ -163,7 +366,7 @@ public class CommandLoop {
     }
 
     private CommandResult requireLogin(String line, Handler handler) {
-        Optional<User> u = auth.currentUser();
+        Optional<User> u = currentUser();
         if (u.isEmpty()) {
             System.out.println("Please login first.");
             return CommandResult.CONTINUE;
@@ -182,7 +385,7 @@ public class CommandLoop {
         BigDecimal amount = parseMoney(parts[2]);
         String comment = joinTail(parts, 3);
 
-        var res = finance.addIncome(user, category, amount, comment);
+        var res = finance().addIncome(user, category, amount, comment);
         System.out.println(res.message);
         return CommandResult.CONTINUE;
     }
@@ -198,7 +401,7 @@ public class CommandLoop {
         BigDecimal amount = parseMoney(parts[2]);
         String comment = joinTail(parts, 3);
 
-        var res = finance.addExpense(user, category, amount, comment);
+        var res = finance().addExpense(user, category, amount, comment);
         System.out.println(res.message);
         return CommandResult.CONTINUE;
     }
@@ -213,7 +416,7 @@ public class CommandLoop {
         String category = parts[1];
         BigDecimal limit = parseMoney(parts[2]);
 
-        var res = finance.setBudget(user, category, limit);
+        var res = finance().setBudget(user, category, limit);
         System.out.println(res.message);
         return CommandResult.CONTINUE;
     }
@@ -255,7 +458,7 @@ public class CommandLoop {
                 return CommandResult.CONTINUE;
             }
 
-            var res = finance.sumByCategories(user, type, cats);
+            var res = finance().sumByCategories(user, type, cats);
 
             withStatsPrintStream(ps -> {
                 ps.println("Sum (" + type.name().toLowerCase(Locale.ROOT) + ") for " + cats + " = " + res.sum);
@@ -275,6 +478,156 @@ public class CommandLoop {
         return CommandResult.CONTINUE;
     }
 
+    private CommandResult handleQuery(User user, String line) {
+        String expr = line.length() > "query".length() ? line.substring("query".length()).trim() : "";
+
+        QueryResult res;
+        try {
+            res = finance().query(user, expr);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Query error: " + e.getMessage());
+            System.out.println("Example: query type=expense and category in (Food,Taxi) and amount>500 and date>=2026-01-01 group by month");
+            return CommandResult.CONTINUE;
+        }
+
+        withStatsPrintStream(ps -> {
+            ps.println("Query: " + (expr.isEmpty() ? "(all)" : expr));
+            ps.println("Plan: " + res.plan + ", examined " + res.examined + " of " + res.total);
+            ps.println(String.format(Locale.ROOT, "  %-20s %8s %14s %14s", "group", "count", "income", "expense"));
+            for (var r : res.rows) {
+                ps.println(String.format(Locale.ROOT, "  %-20s %8d %14s %14s",
+                        r.group(), r.count(), r.income().toPlainString(), r.expense().toPlainString()));
+            }
+        });
+        return CommandResult.CONTINUE;
+    }
+
+    private CommandResult handleRecurring(User user, String line) {
+        String[] parts = line.split("\\s+");
+        String sub = parts.length > 1 ? parts[1].toLowerCase(Locale.ROOT) : "";
+
+        if (sub.equals("add") && parts.length >= 6) {
+            TransactionType type = parseType(parts[2]);
+            if (type != null) {
+                String category = parts[3];
+                BigDecimal amount = parseMoney(parts[4]);
+                String schedule = joinTail(parts, 5);
+
+                var res = finance().addRecurring(user, type, category, amount, schedule);
+                System.out.println(res.message);
+                return CommandResult.CONTINUE;
+            }
+        }
+
+        if (sub.equals("list") && parts.length == 2) {
+            var rules = finance().listRecurring(user);
+            if (rules.isEmpty()) {
+                System.out.println("No recurring rules.");
+                return CommandResult.CONTINUE;
+            }
+            for (var r : rules) {
+                System.out.println("  #" + r.getId() + " " + r.getType().name().toLowerCase(Locale.ROOT)
+                        + " " + r.getCategory() + " " + r.getAmount()
+                        + " [" + r.getSchedule() + "] next: " + (r.getNextDue() == null ? "never" : r.getNextDue()));
+            }
+            return CommandResult.CONTINUE;
+        }
+
+        if (sub.equals("remove") && parts.length == 3) {
+            try {
+                var res = finance().removeRecurring(user, Integer.parseInt(parts[2].replace("#", "")));
+                System.out.println(res.message);
+                return CommandResult.CONTINUE;
+            } catch (NumberFormatException ignored) {
+                // покажем usage
+            }
+        }
+
+        System.out.println("Usage:");
+        System.out.println("  recurring add <income|expense> <category> <amount> <schedule>");
+        System.out.println("  recurring list");
+        System.out.println("  recurring remove <id>");
+        System.out.println("Schedule: 'minute hour day month weekday' (e.g. '0 9 1 * *') or @hourly|@daily|@weekly|@monthly|@yearly");
+        return CommandResult.CONTINUE;
+    }
+
+    private CommandResult handleWallet(User user, String line) {
+        String[] parts = line.split("\\s+");
+        var w = user.getWallet();
+
+        if (parts.length == 1) {
+            if (w.isMapped()) {
+                System.out.println("Wallet storage: mapped log " + w.getMappedLogPath()
+                        + " (" + w.getTransactions().size() + " transactions)");
+            } else {
+                System.out.println("Wallet storage: heap (" + w.getTransactions().size() + " transactions)");
+            }
+            return CommandResult.CONTINUE;
+        }
+
+        if (parts.length <= 3 && parts[1].equalsIgnoreCase("mapped")) {
+            // Относительный каталог — рядом с data.dat, а не в текущем каталоге процесса
+            Path dir = Path.of(usersDataFile).toAbsolutePath().getParent()
+                    .resolve(parts.length == 3 ? parts[2] : DEFAULT_WALLETS_DIR);
+            var res = finance().moveWalletToMappedLog(user, dir);
+            System.out.println(res.message);
+            return CommandResult.CONTINUE;
+        }
+
+        System.out.println("Usage:");
+        System.out.println("  wallet");
+        System.out.println("  wallet mapped [dir]");
+        return CommandResult.CONTINUE;
+    }
+
+    private CommandResult handleExport(User user, String line) {
+        String[] parts = line.split("\\s+");
+        List<String> args = new ArrayList<>(Arrays.asList(parts).subList(1, parts.length));
+        boolean gzip = args.remove("--gzip");
+        boolean stats = !args.isEmpty() && args.get(0).equalsIgnoreCase("stats");
+        if (stats) args.remove(0);
+
+        ExportService.Format format = args.isEmpty() ? null : ExportService.Format.parse(args.get(0));
+        if (format == null || args.size() < 2 || args.size() > (stats ? 2 : 3)) {
+            printExportUsage();
+            return CommandResult.CONTINUE;
+        }
+
+        Path path = Path.of(args.get(1));
+        LocalDate from = null;
+        LocalDate to = null;
+        if (args.size() == 3) {
+            LocalDate[] range = parseDateRange(args.get(2));
+            if (range == null) {
+                System.out.println("Invalid date range: " + args.get(2) + " (expected yyyy-MM-dd..yyyy-MM-dd)");
+                return CommandResult.CONTINUE;
+            }
+            from = range[0];
+            to = range[1];
+        }
+
+        try {
+            if (stats) {
+                export().exportStats(finance().buildStats(user), format, path, gzip);
+                System.out.println("Stats exported to: " + path);
+            } else {
+                finance().materializeRecurring(user);
+                long rows = export().exportTransactions(user.getWallet(), format, path, from, to, gzip,
+                        n -> System.out.println("  ... " + n + " rows"));
+                System.out.println("Exported " + rows + " transactions to: " + path);
+            }
+        } catch (Exception e) {
+            System.out.println("ERROR: cannot export to file: " + path);
+            System.out.println("Reason: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        return CommandResult.CONTINUE;
+    }
+
+    private void printExportUsage() {
+        System.out.println("Usage:");
+        System.out.println("  export <csv|json> <path> [from..to] [--gzip]");
+        System.out.println("  export stats <csv|json> <path> [--gzip]");
+    }
 
     private void withStatsPrintStream(StatsPrinter printer) {
         if (!statsToFile) {
@@ -308,7 +661,7 @@ public class CommandLoop {
     }
 
     private void printFullStats(PrintStream ps, User user) {
-        var r = finance.buildStats(user);
+        var r = finance().buildStats(user);
 
         ps.println("Total income: " + r.totalIncome);
         ps.println("Income by categories:");
@@ -332,7 +685,7 @@ public class CommandLoop {
     }
 
     private void printCategorySums(PrintStream ps, User user, TransactionType type) {
-        var r = finance.buildStats(user);
+        var r = finance().buildStats(user);
         Map<String, BigDecimal> map = (type == TransactionType.INCOME) ? r.incomeByCategory : r.expenseByCategory;
         ps.println(type == TransactionType.INCOME ? "Income by categories:" : "Expense by categories:");
         printMapSorted(ps, map);
@@ -359,6 +712,21 @@ public class CommandLoop {
         }
     }
 
+    private LocalDate[] parseDateRange(String s) {
+        int idx = s.indexOf("..");
+        if (idx < 0) return null;
+        try {
+            String from = s.substring(0, idx);
+            String to = s.substring(idx + 2);
+            return new LocalDate[]{
+                    from.isEmpty() ? null : LocalDate.parse(from),
+                    to.isEmpty() ? null : LocalDate.parse(to)
+            };
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     private TransactionType parseType(String s) {
         if (s == null) return null;
         return switch (s.toLowerCase(Locale.ROOT)) {
@@ -382,6 +750,7 @@ public class CommandLoop {
         System.out.println("Auth:");
         System.out.println("  register <login> <password>");
         System.out.println("  login <login> <password>");
+        System.out.println("  login --token <token>");
         System.out.println("  logout");
         System.out.println("  whoami");
         System.out.println();
@@ -393,6 +762,14 @@ public class CommandLoop {
         System.out.println("  stats income");
         System.out.println("  stats expense");
         System.out.println("  stats categories <income|expense> <cat1,cat2,...>");
+        System.out.println("  query <expr> [group by day|month|year|category|type]");
+        System.out.println("  export <csv|json> <path> [from..to] [--gzip]");
+        System.out.println("  export stats <csv|json> <path> [--gzip]");
+        System.out.println("  recurring add <income|expense> <category> <amount> <schedule>");
+        System.out.println("  recurring list");
+        System.out.println("  recurring remove <id>");
+        System.out.println("  wallet                  Show wallet storage");
+        System.out.println("  wallet mapped [dir]     Move wallet to a memory-mapped log (default dir: " + DEFAULT_WALLETS_DIR + ")");
         System.out.println();
         System.out.println("Stats output (ONLY affects stats):");
         System.out.println("  statsout                Show current stats output");
@@ -400,8 +777,15 @@ public class CommandLoop {
         System.out.println("  statsout file [path]    Append stats to file (default: " + DEFAULT_STATS_FILE + ")");
         System.out.println();
         System.out.println("Other:");
+        System.out.println("  memory [--top <n>]      Heap and storage footprint (all users in follower mode)");
         System.out.println("  help");
+        System.out.println("  save                    Save data now (followers pick it up)");
         System.out.println("  exit");
+        if (follow) {
+            System.out.println();
+            System.out.println("Read-only follower: register, income, expense, budget, save,");
+            System.out.println("recurring add/remove and wallet mapped are not available.");
+        }
     }
 
     @FunctionalInterface
@@ -0,0 +1,173 @@
+package finance.domain;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Расписание в стиле cron: {@code минута час день-месяца месяц день-недели}.
+ * <p>
+ * Поддерживаются {@code *}, числа, списки {@code 1,15}, диапазоны {@code 1-5}, шаги {@code *&#47;10}
+ * и сокращения {@code @hourly}, {@code @daily}, {@code @weekly}, {@code @monthly}, {@code @yearly}.
+ * День недели: 0 или 7 — воскресенье. Если заданы и день месяца, и день недели, подходит любой из них.
+ */
+public final class CronSchedule implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    // Дальше этого горизонта расписание считается несрабатывающим (например, 30 февраля)
+    private static final int MAX_YEARS_AHEAD = 8;
+
+    private final String expression;
+    private final long minutes;
+    private final long hours;
+    private final long daysOfMonth;
+    private final long months;
+    private final long daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    private CronSchedule(String expression, String[] f) {
+        this.expression = expression;
+        this.minutes = parseField(f[0], 0, 59, "minute");
+        this.hours = parseField(f[1], 0, 23, "hour");
+        this.daysOfMonth = parseField(f[2], 1, 31, "day of month");
+        this.months = parseField(f[3], 1, 12, "month");
+        long dow = parseField(f[4], 0, 7, "day of week");
+        if ((dow & (1L << 7)) != 0) dow |= 1L;
+        this.daysOfWeek = dow & 0x7F;
+        this.anyDayOfMonth = f[2].equals("*");
+        this.anyDayOfWeek = f[4].equals("*");
+    }
+
+    public static CronSchedule parse(String expression) {
+        if (expression == null || expression.isBlank()) {
+            throw new IllegalArgumentException("Schedule must be non-empty.");
+        }
+        String expr = expression.trim().replaceAll("\\s+", " ");
+        String fields = switch (expr.toLowerCase(Locale.ROOT)) {
+            case "@hourly" -> "0 * * * *";
+            case "@daily" -> "0 0 * * *";
+            case "@weekly" -> "0 0 * * 1";
+            case "@monthly" -> "0 0 1 * *";
+            case "@yearly" -> "0 0 1 1 *";
+            default -> expr;
+        };
+        String[] f = fields.split(" ");
+        if (f.length != 5) {
+            throw new IllegalArgumentException("Schedule must have 5 fields (minute hour day month weekday) or be an @alias: " + expression);
+        }
+        return new CronSchedule(expr, f);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /** Ближайший момент срабатывания строго после {@code after}, либо {@code null}. */
+    public LocalDateTime next(LocalDateTime after) {
+        LocalDateTime t = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        LocalDateTime limit = after.plusYears(MAX_YEARS_AHEAD);
+
+        while (!t.isAfter(limit)) {
+            if (!has(months, t.getMonthValue())) {
+                t = t.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+                continue;
+            }
+            if (!dayMatches(t)) {
+                t = t.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+                continue;
+            }
+            int hour = nextBit(hours, t.getHour());
+            if (hour < 0) {
+                t = t.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+                continue;
+            }
+            if (hour != t.getHour()) {
+                t = t.withHour(hour).withMinute(0);
+            }
+            int minute = nextBit(minutes, t.getMinute());
+            if (minute < 0) {
+                t = t.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+                continue;
+            }
+            return t.withMinute(minute);
+        }
+        return null;
+    }
+
+    private boolean dayMatches(LocalDateTime t) {
+        boolean dom = has(daysOfMonth, t.getDayOfMonth());
+        boolean dow = has(daysOfWeek, t.getDayOfWeek() == DayOfWeek.SUNDAY ? 0 : t.getDayOfWeek().getValue());
+        if (anyDayOfMonth) return dow;
+        if (anyDayOfWeek) return dom;
+        return dom || dow;
+    }
+
+    private static boolean has(long bits, int value) {
+        return (bits & (1L << value)) != 0;
+    }
+
+    private static int nextBit(long bits, int from) {
+        long rest = bits & (-1L << from);
+        return rest == 0 ? -1 : Long.numberOfTrailingZeros(rest);
+    }
+
+    private static long parseField(String field, int min, int max, String name) {
+        long bits = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            String range = part;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max, name);
+                range = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if (range.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = range.indexOf('-');
+                if (dash > 0) {
+                    from = parseNumber(range.substring(0, dash), min, max, name);
+                    to = parseNumber(range.substring(dash + 1), min, max, name);
+                } else {
+                    from = parseNumber(range, min, max, name);
+                    to = slash >= 0 ? max : from;
+                }
+                if (from > to) {
+                    throw new IllegalArgumentException("Invalid " + name + " range: " + range);
+                }
+            }
+
+            for (int v = from; v <= to; v += step) {
+                bits |= 1L << v;
+            }
+        }
+        return bits;
+    }
+
+    private static int parseNumber(String s, int min, int max, String name) {
+        int v;
+        try {
+            v = Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + s);
+        }
+        if (v < min || v > max) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + s + " (expected " + min + "-" + max + ")");
+        }
+        return v;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,409 @@
+package finance.domain;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Журнал операций кошелька в memory-mapped файле.
+ * <p>
+ * {@code <base>.tx} — заголовок и записи фиксированной длины,
+ * {@code <base>.str} — строки переменной длины (категории и комментарии), на которые ссылаются записи.
+ * Агрегаты считаются прямо по отображённой области, без создания {@link Transaction}.
+ */
+public final class MappedTransactionLog implements Closeable {
+
+    private static final int MAGIC = 0x46545831; // "FTX1"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 8;
+
+    private static final int RECORD_SIZE = 48;
+    private static final int OFF_EPOCH_SECOND = 0;
+    private static final int OFF_NANO = 8;
+    private static final int OFF_SCALE = 12;
+    private static final int OFF_UNSCALED = 16;
+    private static final int OFF_CATEGORY = 24;
+    private static final int OFF_COMMENT = 32;
+    private static final int OFF_TYPE = 40;
+
+    private static final int SEGMENT_RECORDS = 1 << 20;
+    private static final long SEGMENT_BYTES = (long) SEGMENT_RECORDS * RECORD_SIZE;
+    // Сегмент растёт удвоением от этого размера до SEGMENT_RECORDS, чтобы маленький журнал не занимал 48 МБ
+    private static final int INITIAL_SEGMENT_RECORDS = 1 << 10;
+
+    private static final long NULL_REF = -1;
+    private static final long EMPTY_REF = -2;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private final Path recordsFile;
+    private final Path stringsFile;
+    private final FileChannel records;
+    private final FileChannel strings;
+    private final MappedByteBuffer header;
+    private final boolean readOnly;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    private final Map<String, Long> refByString = new HashMap<>();
+    private final Map<Long, String> categoryByRef = new HashMap<>();
+    private final ByteBuffer lenBuf = ByteBuffer.allocate(4);
+
+    private MappedTransactionLog(Path base, boolean readOnly, boolean createNew) throws IOException {
+        this.recordsFile = Path.of(base + ".tx");
+        this.stringsFile = Path.of(base + ".str");
+        this.readOnly = readOnly;
+
+        if (readOnly) {
+            this.records = FileChannel.open(recordsFile, StandardOpenOption.READ);
+            this.strings = FileChannel.open(stringsFile, StandardOpenOption.READ);
+            this.header = records.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            checkHeader();
+            return;
+        }
+
+        Path parent = recordsFile.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        StandardOpenOption create = createNew ? StandardOpenOption.CREATE_NEW : StandardOpenOption.CREATE;
+        if (createNew) {
+            for (Path f : List.of(recordsFile, stringsFile)) {
+                if (Files.exists(f)) throw new FileAlreadyExistsException(f.toString(), null, "Transaction log already exists");
+            }
+        }
+        this.records = FileChannel.open(recordsFile, create, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel str;
+        try {
+            str = FileChannel.open(stringsFile, create, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            records.close();
+            throw e;
+        }
+        this.strings = str;
+
+        boolean fresh = records.size() == 0;
+        this.header = records.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (fresh) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(COUNT_OFFSET, 0);
+        } else {
+            checkHeader();
+        }
+    }
+
+    public static MappedTransactionLog open(Path base) throws IOException {
+        return new MappedTransactionLog(base, false, false);
+    }
+
+    /** Создаёт новый журнал; если хотя бы один из его файлов уже есть — {@link FileAlreadyExistsException}. */
+    public static MappedTransactionLog create(Path base) throws IOException {
+        return new MappedTransactionLog(base, false, true);
+    }
+
+    /** Открывает журнал другого процесса только на чтение; новые записи видны сразу после их появления. */
+    public static MappedTransactionLog openReadOnly(Path base) throws IOException {
+        return new MappedTransactionLog(base, true, false);
+    }
+
+    private void checkHeader() throws IOException {
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            close();
+            throw new IOException("Not a transaction log: " + recordsFile);
+        }
+    }
+
+    public Path recordsFile() {
+        return recordsFile;
+    }
+
+    public Path stringsFile() {
+        return stringsFile;
+    }
+
+    public int size() {
+        return (int) header.getLong(COUNT_OFFSET);
+    }
+
+    public long usedBytes() {
+        try {
+            return HEADER_SIZE + (long) size() * RECORD_SIZE + strings.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static boolean supportsAmount(BigDecimal amount) {
+        return amount.unscaledValue().bitLength() < Long.SIZE;
+    }
+
+    public void append(Transaction tx) {
+        if (readOnly) {
+            throw new IllegalStateException("Transaction log is read-only: " + recordsFile);
+        }
+        if (!supportsAmount(tx.getAmount())) {
+            throw new IllegalArgumentException("Amount does not fit into a mapped record: " + tx.getAmount());
+        }
+
+        int index = size();
+        try {
+            long categoryRef = internString(tx.getCategory());
+            long commentRef = writeString(tx.getComment());
+
+            MappedByteBuffer seg = segment(index / SEGMENT_RECORDS, index % SEGMENT_RECORDS + 1);
+            int pos = (index % SEGMENT_RECORDS) * RECORD_SIZE;
+            LocalDateTime at = tx.getCreatedAt();
+            seg.putLong(pos + OFF_EPOCH_SECOND, at.toEpochSecond(ZoneOffset.UTC));
+            seg.putInt(pos + OFF_NANO, at.getNano());
+            seg.putInt(pos + OFF_SCALE, tx.getAmount().scale());
+            seg.putLong(pos + OFF_UNSCALED, tx.getAmount().unscaledValue().longValue());
+            seg.putLong(pos + OFF_CATEGORY, categoryRef);
+            seg.putLong(pos + OFF_COMMENT, commentRef);
+            seg.put(pos + OFF_TYPE, (byte) tx.getType().ordinal());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Счётчик пишем последним: читатель не увидит недописанную запись
+        header.putLong(COUNT_OFFSET, index + 1L);
+    }
+
+    public Transaction get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+        try {
+            MappedByteBuffer seg = segment(index / SEGMENT_RECORDS, index % SEGMENT_RECORDS + 1);
+            int pos = (index % SEGMENT_RECORDS) * RECORD_SIZE;
+            LocalDateTime at = LocalDateTime.ofEpochSecond(
+                    seg.getLong(pos + OFF_EPOCH_SECOND), seg.getInt(pos + OFF_NANO), ZoneOffset.UTC);
+            BigDecimal amount = BigDecimal.valueOf(seg.getLong(pos + OFF_UNSCALED), seg.getInt(pos + OFF_SCALE));
+            return new Transaction(
+                    TYPES[seg.get(pos + OFF_TYPE)],
+                    category(seg.getLong(pos + OFF_CATEGORY)),
+                    amount,
+                    at,
+                    readString(seg.getLong(pos + OFF_COMMENT)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public List<Transaction> asList() {
+        return new View();
+    }
+
+    public BigDecimal totalByType(TransactionType type) {
+        Sum sum = new Sum();
+        scan(type, (seg, pos) -> sum.add(seg.getLong(pos + OFF_UNSCALED), seg.getInt(pos + OFF_SCALE)));
+        return sum.value();
+    }
+
+    public Map<String, BigDecimal> sumsByCategory(TransactionType type) {
+        Map<Long, Sum> byRef = new HashMap<>();
+        scan(type, (seg, pos) -> byRef.computeIfAbsent(seg.getLong(pos + OFF_CATEGORY), r -> new Sum())
+                .add(seg.getLong(pos + OFF_UNSCALED), seg.getInt(pos + OFF_SCALE)));
+
+        // Одна категория может лежать под несколькими ссылками, если журнал переоткрывали
+        Map<String, BigDecimal> map = new HashMap<>();
+        for (Map.Entry<Long, Sum> e : byRef.entrySet()) {
+            map.merge(category(e.getKey()), e.getValue().value(), BigDecimal::add);
+        }
+        return map;
+    }
+
+    public BigDecimal sumForCategory(TransactionType type, String category) {
+        Sum sum = new Sum();
+        scan(type, (seg, pos) -> {
+            if (category(seg.getLong(pos + OFF_CATEGORY)).equals(category)) {
+                sum.add(seg.getLong(pos + OFF_UNSCALED), seg.getInt(pos + OFF_SCALE));
+            }
+        });
+        return sum.value();
+    }
+
+    public void force() {
+        if (readOnly) return;
+        header.force();
+        for (MappedByteBuffer seg : segments) {
+            if (seg != null) seg.force();
+        }
+        try {
+            strings.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            records.close();
+        } finally {
+            strings.close();
+        }
+    }
+
+    private void scan(TransactionType type, RecordVisitor visitor) {
+        int n = size();
+        byte wanted = (byte) type.ordinal();
+        try {
+            for (int s = 0; s * SEGMENT_RECORDS < n; s++) {
+                int inSegment = Math.min(SEGMENT_RECORDS, n - s * SEGMENT_RECORDS);
+                MappedByteBuffer seg = segment(s, inSegment);
+                for (int i = 0, pos = 0; i < inSegment; i++, pos += RECORD_SIZE) {
+                    if (seg.get(pos + OFF_TYPE) == wanted) visitor.visit(seg, pos);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Отображение сегмента {@code s}, в котором доступны хотя бы первые {@code records} записей. */
+    private MappedByteBuffer segment(int s, int records) throws IOException {
+        long needed = (long) records * RECORD_SIZE;
+        MappedByteBuffer seg = s < segments.size() ? segments.get(s) : null;
+        if (seg != null && seg.capacity() >= needed) return seg;
+
+        long start = HEADER_SIZE + s * SEGMENT_BYTES;
+        long existing = Math.min(SEGMENT_BYTES, Math.max(0, this.records.size() - start));
+        if (readOnly) {
+            // Пишущий процесс расширяет файл до записи и только потом увеличивает счётчик,
+            // так что нехватка байт означает обрезанный файл
+            if (existing < needed) throw new EOFException("Truncated transaction log: " + recordsFile);
+            seg = this.records.map(FileChannel.MapMode.READ_ONLY, start, existing);
+        } else {
+            long capacity = seg != null ? seg.capacity() / RECORD_SIZE : INITIAL_SEGMENT_RECORDS;
+            while (capacity < records) capacity *= 2;
+            long bytes = Math.max(Math.min(capacity, SEGMENT_RECORDS) * RECORD_SIZE, existing);
+            seg = this.records.map(FileChannel.MapMode.READ_WRITE, start, bytes);
+        }
+
+        while (segments.size() <= s) segments.add(null);
+        segments.set(s, seg);
+        return seg;
+    }
+
+    private String category(long ref) {
+        String s = categoryByRef.get(ref);
+        if (s == null) {
+            try {
+                s = readString(ref);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            categoryByRef.put(ref, s);
+            refByString.putIfAbsent(s, ref);
+        }
+        return s;
+    }
+
+    private long internString(String s) throws IOException {
+        Long ref = refByString.get(s);
+        if (ref != null) return ref;
+        long r = writeString(s);
+        refByString.put(s, r);
+        categoryByRef.put(r, s);
+        return r;
+    }
+
+    private long writeString(String s) throws IOException {
+        if (s == null) return NULL_REF;
+        if (s.isEmpty()) return EMPTY_REF;
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(4 + bytes.length);
+        buf.putInt(bytes.length).put(bytes).flip();
+
+        long ref = strings.size();
+        long pos = ref;
+        while (buf.hasRemaining()) {
+            pos += strings.write(buf, pos);
+        }
+        return ref;
+    }
+
+    private String readString(long ref) throws IOException {
+        if (ref == NULL_REF) return null;
+        if (ref == EMPTY_REF) return "";
+
+        lenBuf.clear();
+        readFully(lenBuf, ref);
+        ByteBuffer buf = ByteBuffer.allocate(lenBuf.getInt(0));
+        readFully(buf, ref + 4);
+        return new String(buf.array(), StandardCharsets.UTF_8);
+    }
+
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = strings.read(buf, pos);
+            if (n < 0) throw new EOFException("Truncated strings file: " + stringsFile);
+            pos += n;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(MappedByteBuffer segment, int pos);
+    }
+
+    /** Сумма без BigDecimal на каждую запись, пока значения помещаются в long. */
+    private static final class Sum {
+        private static final int FAST_SCALES = 8;
+
+        private final long[] byScale = new long[FAST_SCALES];
+        private BigDecimal overflow = BigDecimal.ZERO;
+
+        void add(long unscaled, int scale) {
+            if (scale >= 0 && scale < FAST_SCALES) {
+                long cur = byScale[scale];
+                long next = cur + unscaled;
+                if (((cur ^ next) & (unscaled ^ next)) >= 0) {
+                    byScale[scale] = next;
+                    return;
+                }
+            }
+            overflow = overflow.add(BigDecimal.valueOf(unscaled, scale));
+        }
+
+        BigDecimal value() {
+            BigDecimal sum = overflow;
+            for (int scale = 0; scale < FAST_SCALES; scale++) {
+                if (byScale[scale] != 0) sum = sum.add(BigDecimal.valueOf(byScale[scale], scale));
+            }
+            return sum;
+        }
+    }
+
+    private final class View extends AbstractList<Transaction> implements RandomAccess {
+        @Override
+        public Transaction get(int index) {
+            return MappedTransactionLog.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return MappedTransactionLog.this.size();
+        }
+    }
+}
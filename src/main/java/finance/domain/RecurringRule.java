@@ -0,0 +1,63 @@
+package finance.domain;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public class RecurringRule implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+    private final TransactionType type;
+    private final String category;
+    private final BigDecimal amount;
+    private final CronSchedule schedule;
+    private LocalDateTime nextDue;
+
+    public RecurringRule(int id, TransactionType type, String category, BigDecimal amount,
+                         CronSchedule schedule, LocalDateTime createdAt) {
+        this.id = id;
+        this.type = type;
+        this.category = category;
+        this.amount = amount;
+        this.schedule = schedule;
+        this.nextDue = schedule.next(createdAt);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public TransactionType getType() {
+        return type;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public CronSchedule getSchedule() {
+        return schedule;
+    }
+
+    /** Следующее ещё не добавленное в кошелёк срабатывание, либо {@code null}, если их больше не будет. */
+    public LocalDateTime getNextDue() {
+        return nextDue;
+    }
+
+    public boolean isDue(LocalDateTime now) {
+        return nextDue != null && !nextDue.isAfter(now);
+    }
+
+    public Transaction materializeNext() {
+        Transaction tx = new Transaction(type, category, amount, nextDue, "recurring #" + id);
+        nextDue = schedule.next(nextDue);
+        return tx;
+    }
+}
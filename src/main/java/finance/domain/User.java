@@ -8,12 +8,13 @@ public class User implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private final String login;
-    private final String password;
+    // Хэш пароля (см. PasswordHasher); у старых записей — пароль в открытом виде до следующего входа
+    private String password;
     private final Wallet wallet;
 
-    public User(String login, String password, Wallet wallet) {
+    public User(String login, String passwordHash, Wallet wallet) {
         this.login = login;
-        this.password = password;
+        this.password = passwordHash;
         this.wallet = wallet;
     }
 
@@ -21,10 +22,17 @@ public class User implements Serializable {
         return login;
     }
 
-    public String getPassword() {
+    public synchronized String getPasswordHash() {
         return password;
     }
 
+    /** Меняет хэш, только если его никто не поменял с момента проверки. */
+    public synchronized boolean replacePasswordHash(String expected, String passwordHash) {
+        if (!password.equals(expected)) return false;
+        this.password = passwordHash;
+        return true;
+    }
+
     public Wallet getWallet() {
         return wallet;
     }
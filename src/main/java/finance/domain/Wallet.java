@@ -1,8 +1,14 @@
 package finance.domain;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.*;
 
 public class Wallet implements Serializable {
@@ -12,15 +18,36 @@ public class Wallet implements Serializable {
     private final List<Transaction> transactions = new ArrayList<>();
     private final Map<String, BigDecimal> budgets = new HashMap<>();
 
+    // Если задан, операции хранятся не в transactions, а в MappedTransactionLog по этому (абсолютному) пути
+    private String mappedLogPath;
+    private transient MappedTransactionLog mappedLog;
+    private transient boolean readOnly;
+    private transient WalletIndex index;
+
+    // null у кошельков, сохранённых до появления регулярных операций
+    private List<RecurringRule> recurringRules;
+    private int lastRecurringRuleId;
+
+    private WalletFootprint footprint;
+
     public void add(Transaction tx) {
-        transactions.add(tx);
+        checkWritable();
+        WalletFootprint f = getFootprint();
+        if (isMapped()) {
+            mappedLog().append(tx);
+        } else {
+            transactions.add(tx);
+        }
+        f.onAdd(tx, isMapped());
     }
 
     public void setBudget(String category, BigDecimal limit) {
+        checkWritable();
         budgets.put(category, limit);
     }
 
     public List<Transaction> getTransactions() {
+        if (isMapped()) return mappedLog().asList();
         return Collections.unmodifiableList(transactions);
     }
 
@@ -28,6 +55,122 @@ public class Wallet implements Serializable {
         return Collections.unmodifiableMap(budgets);
     }
 
+    public List<RecurringRule> getRecurringRules() {
+        if (recurringRules == null) return List.of();
+        return Collections.unmodifiableList(recurringRules);
+    }
+
+    public RecurringRule addRecurringRule(TransactionType type, String category, BigDecimal amount,
+                                          CronSchedule schedule, LocalDateTime createdAt) {
+        checkWritable();
+        if (recurringRules == null) recurringRules = new ArrayList<>();
+        RecurringRule rule = new RecurringRule(++lastRecurringRuleId, type, category, amount, schedule, createdAt);
+        recurringRules.add(rule);
+        return rule;
+    }
+
+    public boolean removeRecurringRule(int id) {
+        checkWritable();
+        if (recurringRules == null) return false;
+        return recurringRules.removeIf(r -> r.getId() == id);
+    }
+
+    /** Кошелёк из чужого снимка: изменять нельзя, mapped-журнал открывается только на чтение. */
+    public void markReadOnly() {
+        readOnly = true;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public void closeLog() {
+        if (mappedLog == null) return;
+        try {
+            mappedLog.close();
+        } catch (IOException ignored) {
+            // файл только читали, терять нечего
+        }
+        mappedLog = null;
+        index = null;
+    }
+
+    public WalletFootprint getFootprint() {
+        if (isMapped()) {
+            // Журнал пополняется без сохранения снимка (а у follower — другим процессом),
+            // поэтому счётчики из data.dat могут отставать: догоняем их по новым записям
+            List<Transaction> txs = getTransactions();
+            if (footprint != null && footprint.getTransactions() > txs.size()) footprint = null;
+            if (footprint == null) footprint = new WalletFootprint();
+            for (int i = (int) footprint.getTransactions(); i < txs.size(); i++) {
+                footprint.onAdd(txs.get(i), true);
+            }
+            return footprint;
+        }
+        if (footprint == null) {
+            // Кошелёк сохранён до появления счётчиков: один раз пересчитываем их по операциям
+            footprint = new WalletFootprint();
+            for (Transaction tx : getTransactions()) {
+                footprint.onAdd(tx, isMapped());
+            }
+        }
+        return footprint;
+    }
+
+    /** Индексы для запросов; строятся при первом обращении и догоняют новые операции. */
+    public WalletIndex getIndex() {
+        if (index == null) index = new WalletIndex();
+        index.catchUp(getTransactions());
+        return index;
+    }
+
+    /** Сколько байт на диске занимает mapped-журнал (без учёта неиспользованного хвоста сегмента), иначе 0. */
+    public long mappedLogBytes() {
+        return isMapped() ? mappedLog().usedBytes() : 0;
+    }
+
+    public boolean isMapped() {
+        return mappedLogPath != null;
+    }
+
+    public String getMappedLogPath() {
+        return mappedLogPath;
+    }
+
+    /** Относительный путь журнала из старого снимка делает абсолютным относительно каталога {@code data.dat}. */
+    public void resolveMappedLogPath(Path dataDir) {
+        if (mappedLogPath == null || mappedLog != null) return;
+        Path p = Path.of(mappedLogPath);
+        if (!p.isAbsolute()) mappedLogPath = dataDir.resolve(p).normalize().toString();
+    }
+
+    public boolean supportsAmount(BigDecimal amount) {
+        return !isMapped() || MappedTransactionLog.supportsAmount(amount);
+    }
+
+    public void moveToMappedLog(Path base) throws IOException {
+        checkWritable();
+        if (isMapped()) return;
+        for (Transaction tx : transactions) {
+            if (!MappedTransactionLog.supportsAmount(tx.getAmount())) {
+                throw new IllegalArgumentException("Amount does not fit into a mapped record: " + tx.getAmount());
+            }
+        }
+
+        // Чужой журнал, даже пустой, не подхватываем: иначе два кошелька писали бы в одни записи
+        MappedTransactionLog log = MappedTransactionLog.create(base);
+        for (Transaction tx : transactions) {
+            log.append(tx);
+        }
+        log.force();
+
+        mappedLog = log;
+        mappedLogPath = base.toAbsolutePath().normalize().toString();
+        transactions.clear();
+        index = null;
+        getFootprint().onMoveToMappedLog();
+    }
+
     public BigDecimal totalIncome() {
         return totalByType(TransactionType.INCOME);
     }
@@ -37,6 +180,7 @@ public class Wallet implements Serializable {
     }
 
     public BigDecimal totalByType(TransactionType type) {
+        if (isMapped()) return mappedLog().totalByType(type);
         BigDecimal sum = BigDecimal.ZERO;
         for (Transaction tx : transactions) {
             if (tx.getType() == type) sum = sum.add(tx.getAmount());
@@ -45,6 +189,7 @@ public class Wallet implements Serializable {
     }
 
     public Map<String, BigDecimal> sumsByCategory(TransactionType type) {
+        if (isMapped()) return mappedLog().sumsByCategory(type);
         Map<String, BigDecimal> map = new HashMap<>();
         for (Transaction tx : transactions) {
             if (tx.getType() != type) continue;
@@ -54,6 +199,7 @@ public class Wallet implements Serializable {
     }
 
     public BigDecimal sumForCategory(TransactionType type, String category) {
+        if (isMapped()) return mappedLog().sumForCategory(type, category);
         BigDecimal sum = BigDecimal.ZERO;
         for (Transaction tx : transactions) {
             if (tx.getType() == type && tx.getCategory().equals(category)) {
@@ -65,9 +211,48 @@ public class Wallet implements Serializable {
 
     public BigDecimal sumForCategories(TransactionType type, List<String> categories) {
         BigDecimal sum = BigDecimal.ZERO;
+        if (isMapped()) {
+            Map<String, BigDecimal> byCat = mappedLog().sumsByCategory(type);
+            for (String cat : categories) {
+                sum = sum.add(byCat.getOrDefault(cat, BigDecimal.ZERO));
+            }
+            return sum;
+        }
         for (String cat : categories) {
             sum = sum.add(sumForCategory(type, cat));
         }
         return sum;
     }
+
+    // Журнал открывается при первом обращении, поэтому загрузка data.dat его не читает
+    private MappedTransactionLog mappedLog() {
+        if (mappedLog == null) {
+            try {
+                Path base = Path.of(mappedLogPath);
+                mappedLog = readOnly ? MappedTransactionLog.openReadOnly(base) : MappedTransactionLog.open(base);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open transaction log: " + mappedLogPath, e);
+            }
+        }
+        return mappedLog;
+    }
+
+    private void checkWritable() {
+        if (readOnly) throw new IllegalStateException("Wallet is read-only.");
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (!isMapped() && footprint != null && footprint.getTransactions() != transactions.size()) {
+            footprint = null;
+        }
+        if (!isMapped()) getFootprint();
+    }
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (mappedLog != null) mappedLog.force();
+        out.defaultWriteObject();
+    }
 }
@@ -0,0 +1,114 @@
+package finance.domain;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Счётчики объёма кошелька, которые обновляются при каждой операции.
+ * <p>
+ * Размеры в куче — оценка для 64-битной JVM со сжатыми указателями, а не обход графа объектов.
+ * Число разных комментариев считается приближённо (HyperLogLog, ~2% погрешности),
+ * чтобы не держать в памяти множество всех комментариев.
+ */
+public class WalletFootprint implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    // Transaction 32 + LocalDateTime/LocalDate/LocalTime 3 x 24 + BigDecimal 40 + ссылка в ArrayList 4
+    public static final long TRANSACTION_BYTES = 148;
+    // String 24 + заголовок byte[] 16, содержимое добавляется отдельно
+    public static final long STRING_BYTES = 40;
+    public static final long BUDGET_BYTES = 140;
+    public static final long MAPPED_CATEGORY_BYTES = 120;
+
+    private static final int SKETCH_BITS = 11;
+    private static final int SKETCH_SIZE = 1 << SKETCH_BITS;
+
+    private long transactions;
+    private long heapStringBytes;
+    private final Map<String, Long> categoryCounts = new HashMap<>();
+    private final byte[] commentSketch = new byte[SKETCH_SIZE];
+
+    public void onAdd(Transaction tx, boolean mapped) {
+        transactions++;
+        categoryCounts.merge(tx.getCategory(), 1L, Long::sum);
+        if (tx.getComment() != null && !tx.getComment().isEmpty()) {
+            addToSketch(commentSketch, tx.getComment());
+        }
+        if (!mapped) {
+            heapStringBytes += stringBytes(tx.getCategory()) + stringBytes(tx.getComment());
+        }
+    }
+
+    /** Строки операций переехали из кучи в файл журнала. */
+    public void onMoveToMappedLog() {
+        heapStringBytes = 0;
+    }
+
+    public long getTransactions() {
+        return transactions;
+    }
+
+    public long getHeapStringBytes() {
+        return heapStringBytes;
+    }
+
+    public Map<String, Long> getCategoryCounts() {
+        return Collections.unmodifiableMap(categoryCounts);
+    }
+
+    public int distinctCategories() {
+        return categoryCounts.size();
+    }
+
+    public long distinctCommentsEstimate() {
+        return estimate(commentSketch);
+    }
+
+    /** Добавляет комментарии этого кошелька в общий скетч, чтобы оценить число разных комментариев по всем кошелькам. */
+    public void mergeCommentsInto(byte[] sketch) {
+        for (int i = 0; i < SKETCH_SIZE; i++) {
+            if (commentSketch[i] > sketch[i]) sketch[i] = commentSketch[i];
+        }
+    }
+
+    public static byte[] newSketch() {
+        return new byte[SKETCH_SIZE];
+    }
+
+    public static long estimate(byte[] sketch) {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : sketch) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double m = SKETCH_SIZE;
+        double e = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (e <= 2.5 * m && zeros > 0) {
+            e = m * Math.log(m / zeros);
+        }
+        return Math.round(e);
+    }
+
+    private static void addToSketch(byte[] sketch, String s) {
+        long h = mix(s.hashCode());
+        int idx = (int) (h >>> (Long.SIZE - SKETCH_BITS));
+        byte rank = (byte) (Long.numberOfLeadingZeros((h << SKETCH_BITS) | (1L << (SKETCH_BITS - 1))) + 1);
+        if (rank > sketch[idx]) sketch[idx] = rank;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static long stringBytes(String s) {
+        if (s == null) return 0;
+        return STRING_BYTES + ((s.length() + 7) & ~7);
+    }
+}
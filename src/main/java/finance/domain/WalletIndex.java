@@ -0,0 +1,90 @@
+package finance.domain;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индексы кошелька для запросов: позиции операций по категориям и признак того, что операции идут по времени.
+ * <p>
+ * Строится при первом запросе и дальше только догоняет новые операции, поэтому подходит и для
+ * mapped-журнала, который дописывает другой процесс.
+ */
+public class WalletIndex {
+
+    private final Map<String, IntList> byCategory = new HashMap<>();
+    private int indexed;
+    private boolean timeOrdered = true;
+    private LocalDateTime last;
+
+    void catchUp(List<Transaction> txs) {
+        int n = txs.size();
+        for (int i = indexed; i < n; i++) {
+            Transaction tx = txs.get(i);
+            if (last != null && tx.getCreatedAt().isBefore(last)) timeOrdered = false;
+            last = tx.getCreatedAt();
+            byCategory.computeIfAbsent(tx.getCategory(), c -> new IntList()).add(i);
+        }
+        indexed = n;
+    }
+
+    /** Операции добавлялись по неубыванию времени, значит по списку можно искать двоичным поиском. */
+    public boolean isTimeOrdered() {
+        return timeOrdered;
+    }
+
+    /** Позиции операций из {@code categories} в диапазоне {@code [from, to)}, по возрастанию. */
+    public int[] positions(Collection<String> categories, int from, int to) {
+        int[] out = new int[0];
+        int size = 0;
+        for (String c : categories) {
+            IntList list = byCategory.get(c);
+            if (list == null) continue;
+            int lo = list.lowerBound(from);
+            int hi = list.lowerBound(to);
+            if (hi <= lo) continue;
+            if (out.length < size + (hi - lo)) out = Arrays.copyOf(out, Math.max(out.length * 2, size + (hi - lo)));
+            System.arraycopy(list.values, lo, out, size, hi - lo);
+            size += hi - lo;
+        }
+        out = Arrays.copyOf(out, size);
+        if (categories.size() > 1) Arrays.sort(out);
+        return out;
+    }
+
+    /** Первая позиция в {@code txs}, у которой время не раньше {@code at}. Только для упорядоченных по времени. */
+    public static int lowerBound(List<Transaction> txs, LocalDateTime at) {
+        int lo = 0;
+        int hi = txs.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (txs.get(mid).getCreatedAt().isBefore(at)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static final class IntList {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int lowerBound(int v) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[mid] < v) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
@@ -4,19 +4,42 @@ import finance.domain.User;
 import finance.domain.Wallet;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Регистрация и вход пользователей.
+ * <p>
+ * Интерактивные {@link #register} и {@link #login} намеренно синхронны: CLI не может продолжить,
+ * не зная результата, поэтому KDF считается прямо в потоке команд, без передачи в пул и ожидания.
+ * Асинхронны только {@link #authenticate} и {@link PasswordHasher#hashAsync} — для пакетных вызовов
+ * (нагрузочный тест, бенчмарк входа), которые проверяют много паролей параллельно.
+ */
 public class AuthService {
     private final UserStore store;
+    private final PasswordHasher hasher;
+    private final SessionCache sessions;
     private User currentUser;
 
     public AuthService(UserStore store) {
+        this(store, new PasswordHasher(), new SessionCache());
+    }
+
+    public AuthService(UserStore store, PasswordHasher hasher, SessionCache sessions) {
         this.store = store;
+        this.hasher = hasher;
+        this.sessions = sessions;
     }
 
     public Optional<User> currentUser() {
         return Optional.ofNullable(currentUser);
     }
 
+    public Optional<String> currentSessionToken() {
+        return currentUser().flatMap(u -> sessions.tokenFor(u.getLogin()));
+    }
+
     public Result register(String login, String password) {
         if (isBlank(login) || isBlank(password)) {
             return Result.error("Login and password must be non-empty.");
@@ -25,31 +48,100 @@ public class AuthService {
             return Result.error("User already exists: " + login);
         }
 
-        store.put(new User(login, password, new Wallet()));
+        store.put(new User(login, hasher.hash(password), new Wallet()));
         return Result.ok("User registered: " + login);
     }
 
     public Result login(String login, String password) {
-        if (isBlank(login) || isBlank(password)) {
-            return Result.error("Login and password must be non-empty.");
+        Result res = precheck(login, password);
+        if (res == null) {
+            User user = store.get(login);
+            String stored = user.getPasswordHash();
+            if (sessions.matches(login, password)) {
+                res = Result.ok("Logged in as: " + login);
+            } else if (!hasher.verify(password, stored)) {
+                res = Result.error("Invalid password.");
+            } else {
+                sessions.put(login, password);
+                if (hasher.needsRehash(stored)) user.replacePasswordHash(stored, hasher.hash(password));
+                res = Result.ok("Logged in as: " + login);
+            }
         }
+        if (res.success()) {
+            currentUser = store.get(login);
+        }
+        return res;
+    }
 
-        User user = store.get(login);
-        if (user == null) {
-            return Result.error("User not found: " + login);
+    public Result loginWithToken(String token) {
+        Optional<String> login = sessions.loginForToken(token);
+        if (login.isEmpty() || !store.exists(login.get())) {
+            return Result.error("Session expired or unknown.");
         }
-        if (!password.equals(user.getPassword())) {
-            return Result.error("Invalid password.");
+        currentUser = store.get(login.get());
+        return Result.ok("Logged in as: " + login.get());
+    }
+
+    /**
+     * Проверяет пароль, не меняя текущего пользователя. KDF выполняется на пуле {@link PasswordHasher},
+     * поэтому пакетные вызовы не занимают вызывающий поток. Недавно проверенная пара логин/пароль
+     * берётся из {@link SessionCache} без KDF. Пароль в открытом виде или с устаревшей стоимостью
+     * после успешной проверки пересчитывается в хэш.
+     */
+    public CompletableFuture<Result> authenticate(String login, String password) {
+        Result rejected = precheck(login, password);
+        if (rejected != null) return CompletableFuture.completedFuture(rejected);
+
+        User user = store.get(login);
+
+        Result ok = Result.ok("Logged in as: " + login);
+        if (sessions.matches(login, password)) {
+            return CompletableFuture.completedFuture(ok);
         }
 
-        currentUser = user;
-        return Result.ok("Logged in as: " + login);
+        String stored = user.getPasswordHash();
+        return hasher.verifyAsync(password, stored)
+                .thenCompose(valid -> {
+                    if (!valid) return CompletableFuture.completedFuture(Result.error("Invalid password."));
+                    sessions.put(login, password);
+                    if (!hasher.needsRehash(stored)) return CompletableFuture.completedFuture(ok);
+
+                    return hasher.hashAsync(password).handle((hash, e) -> {
+                        // Если пул занят, миграция случится при следующем входе
+                        if (hash != null) user.replacePasswordHash(stored, hash);
+                        return ok;
+                    });
+                })
+                .exceptionally(e -> failure(e instanceof CompletionException ? e.getCause() : e));
     }
 
+    /** Ошибка, если логин или пароль пусты или пользователя нет; иначе {@code null}. */
+    private Result precheck(String login, String password) {
+        if (isBlank(login) || isBlank(password)) return Result.error("Login and password must be non-empty.");
+        if (!store.exists(login)) return Result.error("User not found: " + login);
+        return null;
+    }
+
+    /** После перезагрузки хранилища текущий пользователь указывает на устаревший объект. */
+    public void refreshCurrentUser() {
+        if (currentUser != null) {
+            currentUser = store.get(currentUser.getLogin());
+        }
+    }
+
+    /** Выходит из аккаунта и отзывает токен сессии: войти по нему повторно уже нельзя. */
     public void logout() {
+        if (currentUser != null) sessions.invalidate(currentUser.getLogin());
         currentUser = null;
     }
 
+    private static Result failure(Throwable e) {
+        if (e instanceof RejectedExecutionException) {
+            return Result.error("Too many concurrent logins, try again later.");
+        }
+        return Result.error("Authentication failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+    }
+
     private static boolean isBlank(String s) {
         return s == null || s.trim().isEmpty();
     }
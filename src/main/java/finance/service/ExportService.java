@@ -0,0 +1,229 @@
+package finance.service;
+
+import finance.domain.Transaction;
+import finance.domain.Wallet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+public class ExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_STEP = 100_000;
+
+    public long exportTransactions(Wallet wallet, Format format, Path path,
+                                   LocalDate from, LocalDate to,
+                                   boolean gzip, Progress progress) throws IOException {
+        long rows = 0;
+        try (Writer out = open(path, gzip)) {
+            if (format == Format.CSV) {
+                out.write("date,type,category,amount,comment\n");
+            } else {
+                out.write("[\n");
+            }
+
+            // Идём по списку без копирования: в памяти только буфер записи
+            for (Transaction tx : wallet.getTransactions()) {
+                LocalDate day = tx.getCreatedAt().toLocalDate();
+                if (from != null && day.isBefore(from)) continue;
+                if (to != null && day.isAfter(to)) continue;
+
+                if (format == Format.CSV) {
+                    writeCsvRow(out, tx);
+                } else {
+                    if (rows > 0) out.write(",\n");
+                    writeJsonRow(out, tx);
+                }
+
+                rows++;
+                if (progress != null && rows % PROGRESS_STEP == 0) {
+                    progress.rows(rows);
+                }
+            }
+
+            if (format == Format.JSON) {
+                out.write(rows > 0 ? "\n]\n" : "]\n");
+            }
+        }
+        return rows;
+    }
+
+    public void exportStats(FinanceService.StatsReport r, Format format, Path path, boolean gzip) throws IOException {
+        try (Writer out = open(path, gzip)) {
+            if (format == Format.CSV) {
+                out.write("section,category,amount,limit,remaining\n");
+                out.write("total_income,," + money(r.totalIncome) + ",,\n");
+                out.write("total_expense,," + money(r.totalExpense) + ",,\n");
+                writeCsvSums(out, "income", r.incomeByCategory);
+                writeCsvSums(out, "expense", r.expenseByCategory);
+                for (String cat : sortedKeys(r.budgets)) {
+                    var b = r.budgets.get(cat);
+                    out.write("budget," + csv(cat) + ",," + money(b.limit) + "," + money(b.remaining) + "\n");
+                }
+                return;
+            }
+
+            out.write("{\n");
+            out.write("  \"totalIncome\": " + money(r.totalIncome) + ",\n");
+            out.write("  \"totalExpense\": " + money(r.totalExpense) + ",\n");
+            out.write("  \"incomeByCategory\": ");
+            writeJsonSums(out, r.incomeByCategory);
+            out.write(",\n  \"expenseByCategory\": ");
+            writeJsonSums(out, r.expenseByCategory);
+            out.write(",\n  \"budgets\": {");
+            boolean first = true;
+            for (String cat : sortedKeys(r.budgets)) {
+                var b = r.budgets.get(cat);
+                out.write(first ? "\n" : ",\n");
+                out.write("    " + json(cat) + ": {\"limit\": " + money(b.limit)
+                        + ", \"remaining\": " + money(b.remaining) + "}");
+                first = false;
+            }
+            out.write(first ? "}\n}\n" : "\n  }\n}\n");
+        }
+    }
+
+    private Writer open(Path path, boolean gzip) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        OutputStream os = Channels.newOutputStream(ch);
+        if (gzip) {
+            os = new GZIPOutputStream(os, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private void writeCsvRow(Writer out, Transaction tx) throws IOException {
+        out.write(tx.getCreatedAt().toString());
+        out.write(',');
+        out.write(tx.getType().name().toLowerCase(Locale.ROOT));
+        out.write(',');
+        out.write(csv(tx.getCategory()));
+        out.write(',');
+        out.write(money(tx.getAmount()));
+        out.write(',');
+        out.write(csv(tx.getComment()));
+        out.write('\n');
+    }
+
+    private void writeJsonRow(Writer out, Transaction tx) throws IOException {
+        out.write("  {\"date\": \"");
+        out.write(tx.getCreatedAt().toString());
+        out.write("\", \"type\": \"");
+        out.write(tx.getType().name().toLowerCase(Locale.ROOT));
+        out.write("\", \"category\": ");
+        out.write(json(tx.getCategory()));
+        out.write(", \"amount\": ");
+        out.write(money(tx.getAmount()));
+        out.write(", \"comment\": ");
+        out.write(json(tx.getComment()));
+        out.write('}');
+    }
+
+    private void writeCsvSums(Writer out, String section, Map<String, BigDecimal> map) throws IOException {
+        for (String cat : sortedKeys(map)) {
+            out.write(section + "," + csv(cat) + "," + money(map.get(cat)) + ",,\n");
+        }
+    }
+
+    private void writeJsonSums(Writer out, Map<String, BigDecimal> map) throws IOException {
+        if (map.isEmpty()) {
+            out.write("{}");
+            return;
+        }
+        out.write("{");
+        boolean first = true;
+        for (String cat : sortedKeys(map)) {
+            out.write(first ? "\n" : ",\n");
+            out.write("    " + json(cat) + ": " + money(map.get(cat)));
+            first = false;
+        }
+        out.write("\n  }");
+    }
+
+    private static ArrayList<String> sortedKeys(Map<String, ?> map) {
+        var keys = new ArrayList<>(map.keySet());
+        keys.sort(String::compareTo);
+        return keys;
+    }
+
+    private static String money(BigDecimal v) {
+        return v.toPlainString();
+    }
+
+    private static String csv(String s) {
+        if (s == null || s.isEmpty()) return "";
+        boolean quote = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) return s;
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String json(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    public enum Format {
+        CSV,
+        JSON;
+
+        public static Format parse(String s) {
+            if (s == null) return null;
+            return switch (s.toLowerCase(Locale.ROOT)) {
+                case "csv" -> CSV;
+                case "json" -> JSON;
+                default -> null;
+            };
+        }
+    }
+
+    @FunctionalInterface
+    public interface Progress {
+        void rows(long exported);
+    }
+}
@@ -1,28 +1,98 @@
 package finance.service;
 
 import finance.domain.User;
+import finance.domain.Wallet;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.Map;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+/**
+ * Снимок пользователей на диске.
+ * <p>
+ * Пользователи раскладываются по блокам; каждый блок сериализуется, сжимается и снабжается CRC32C
+ * независимо от остальных, поэтому запись и чтение блоков идут параллельно на пуле потоков.
+ * Формат файла:
+ * <pre>
+ *   int magic, int version, int blockCount, int tableLength
+ *   таблица блоков: long offset (от начала блоков), int compressed, int raw, int crc, int users, users × UTF login
+ *   int crc таблицы
+ *   сжатые блоки
+ * </pre>
+ * Повреждённый блок теряет только своих пользователей: остальные загружаются. Владелец файла
+ * ({@link #loadUsersOrEmpty}) копирует его рядом с суффиксом {@code .corrupt-<время>}, чтобы следующее
+ * сохранение не стёрло улики; {@link #loadUsers} только предупреждает и в каталог не пишет.
+ * Старые снимки (один сериализованный {@code Map}) читаются как раньше и при сохранении переписываются
+ * в новом формате.
+ * <p>
+ * Пулы потоков общие для всех экземпляров с одинаковым числом потоков и создаются при первом
+ * чтении или записи: короткоживущие экземпляры (бенчмарки, нагрузочный тест) не оставляют потоков.
+ */
 public class FileStorage {
+
+    public static final int DEFAULT_THREADS = Integer.getInteger("finance.storage.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    private static final int MAGIC = 0x46534E42; // "FSNB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    // Блок закрывается, когда в нём набралось столько операций в куче или столько пользователей
+    private static final int BLOCK_TRANSACTIONS = 16_384;
+    private static final int BLOCK_USERS = 256;
+
+    private static final ConcurrentHashMap<Integer, ExecutorService> POOLS = new ConcurrentHashMap<>();
+
     private final Path file;
+    private final int threads;
 
     public FileStorage(String filename) {
+        this(filename, DEFAULT_THREADS);
+    }
+
+    public FileStorage(String filename, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Threads must be >= 1");
         this.file = Path.of(filename);
+        this.threads = threads;
     }
 
-    @SuppressWarnings("unchecked")
-    public Map<String, User> loadUsersOrEmpty() {
-        if (!Files.exists(file)) {
-            return Map.of();
-        }
+    private ExecutorService pool() {
+        return POOLS.computeIfAbsent(threads, size -> {
+            AtomicInteger n = new AtomicInteger();
+            return Executors.newFixedThreadPool(size, r -> {
+                Thread t = new Thread(r, "snapshot-io-" + size + "-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        });
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
 
-        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
-            Object obj = in.readObject();
-            return (Map<String, User>) obj;
+    /** Загрузка для владельца файла: при повреждённых блоках сохраняет копию исходного файла рядом. */
+    public Map<String, User> loadUsersOrEmpty() {
+        try {
+            return load(true);
         } catch (Exception e) {
             System.out.println("WARNING: failed to load data file. Starting with empty storage.");
             System.out.println("Reason: " + e.getClass().getSimpleName() + ": " + e.getMessage());
@@ -30,17 +100,324 @@ public class FileStorage {
         }
     }
 
+    /**
+     * Читает снимок. Исключение — только если файл не читается целиком (заголовок или таблица блоков);
+     * о повреждённых блоках печатается предупреждение, их пользователи пропускаются. В каталог снимка
+     * ничего не пишет, поэтому подходит для читателей чужого файла (follower).
+     */
+    public Map<String, User> loadUsers() throws IOException, ClassNotFoundException {
+        return load(false);
+    }
+
+    private Map<String, User> load(boolean keepCorruptCopy) throws IOException, ClassNotFoundException {
+        Map<String, User> users = read(keepCorruptCopy);
+        // Старые снимки хранят путь журнала относительно каталога, где запускали приложение
+        Path dir = file.toAbsolutePath().getParent();
+        for (User u : users.values()) {
+            u.getWallet().resolveMappedLogPath(dir);
+        }
+        return users;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, User> read(boolean keepCorruptCopy) throws IOException, ClassNotFoundException {
+        if (!Files.exists(file)) {
+            return Map.of();
+        }
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(ch, header, 0);
+            header.flip();
+            if (header.remaining() >= 2 && (header.get(0) & 0xFF) == 0xAC && (header.get(1) & 0xFF) == 0xED) {
+                // Старый формат: поток Java-сериализации целиком
+                try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    return (Map<String, User>) in.readObject();
+                }
+            }
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version: " + version);
+            int blockCount = header.getInt();
+            int tableLength = header.getInt();
+            if (blockCount < 0 || tableLength < 0 || HEADER_BYTES + (long) tableLength + 4 > ch.size()) {
+                throw new IOException("Snapshot header is corrupted");
+            }
+
+            List<Block> blocks = readTable(ch, blockCount, tableLength);
+
+            List<Future<List<User>>> futures = new ArrayList<>(blocks.size());
+            for (Block b : blocks) {
+                futures.add(pool().submit(() -> decode(ch, b)));
+            }
+
+            Map<String, User> users = new HashMap<>();
+            List<String> failures = new ArrayList<>();
+            int lostUsers = 0;
+            for (int i = 0; i < blocks.size(); i++) {
+                Block b = blocks.get(i);
+                try {
+                    for (User u : futures.get(i).get()) users.put(u.getLogin(), u);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    List<String> shown = b.logins.subList(0, Math.min(10, b.logins.size()));
+                    failures.add("block " + (i + 1) + "/" + blocks.size() + " (" + cause.getMessage() + "): "
+                            + String.join(", ", shown)
+                            + (b.logins.size() > shown.size() ? " and " + (b.logins.size() - shown.size()) + " more" : ""));
+                    lostUsers += b.logins.size();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while loading " + file);
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                String kept = "";
+                if (keepCorruptCopy) {
+                    Path copy = file.resolveSibling(file.getFileName() + ".corrupt-" + System.currentTimeMillis());
+                    Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+                    kept = " Original file kept as " + copy;
+                }
+                System.out.println("WARNING: " + failures.size() + " corrupted block(s) in " + file
+                        + ", " + lostUsers + " user(s) not loaded." + kept);
+                for (String f : failures) System.out.println("  " + f);
+            }
+            return users;
+        }
+    }
+
     public void saveUsers(Map<String, User> users) {
         try {
             Path parent = file.getParent();
             if (parent != null) Files.createDirectories(parent);
 
-            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
-                out.writeObject(users);
+            List<List<User>> groups = split(users);
+            List<Future<Encoded>> futures = new ArrayList<>(groups.size());
+            for (List<User> g : groups) {
+                futures.add(pool().submit(() -> encode(g)));
+            }
+            List<Encoded> encoded = new ArrayList<>(groups.size());
+            for (Future<Encoded> f : futures) {
+                encoded.add(await(f));
+            }
+
+            byte[] table = writeTable(encoded);
+
+            // Пишем во временный файл и подменяем целиком: читатели видят либо старый снимок, либо новый
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + table.length + 4);
+                header.putInt(MAGIC).putInt(VERSION).putInt(encoded.size()).putInt(table.length);
+                header.put(table).putInt(crc(table, table.length));
+                header.flip();
+                writeFully(ch, header);
+                for (Encoded e : encoded) {
+                    writeFully(ch, ByteBuffer.wrap(e.data, 0, e.compressed));
+                }
+                // Данные — на диск до переименования: иначе после сбоя на месте data.dat может оказаться недописанный файл
+                ch.force(true);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
             }
+            forceDirectory(file.toAbsolutePath().getParent());
         } catch (Exception e) {
             System.out.println("ERROR: failed to save data.");
             System.out.println("Reason: " + e.getClass().getSimpleName() + ": " + e.getMessage());
         }
     }
+
+    public long dataFileBytes() {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** Отпечаток текущего снимка на диске; меняется при каждой подмене файла. {@code null}, если файла нет. */
+    public SnapshotStamp snapshotStamp() {
+        try {
+            BasicFileAttributes a = Files.readAttributes(file, BasicFileAttributes.class);
+            return new SnapshotStamp(a.fileKey(), a.lastModifiedTime(), a.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<List<User>> split(Map<String, User> users) {
+        List<String> logins = new ArrayList<>(users.keySet());
+        Collections.sort(logins);
+
+        List<List<User>> groups = new ArrayList<>();
+        List<User> current = new ArrayList<>();
+        long weight = 0;
+        for (String login : logins) {
+            User u = users.get(login);
+            Wallet w = u.getWallet();
+            current.add(u);
+            // Mapped-кошелёк в снимке — только путь к журналу
+            weight += w.isMapped() ? 0 : w.getTransactions().size();
+            if (weight >= BLOCK_TRANSACTIONS || current.size() >= BLOCK_USERS) {
+                groups.add(current);
+                current = new ArrayList<>();
+                weight = 0;
+            }
+        }
+        if (!current.isEmpty()) groups.add(current);
+        return groups;
+    }
+
+    private static Encoded encode(List<User> users) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(users));
+        }
+        byte[] raw = bytes.toByteArray();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] out = new byte[Math.max(64, raw.length / 2)];
+            int len = 0;
+            while (!deflater.finished()) {
+                if (len == out.length) out = Arrays.copyOf(out, out.length * 2);
+                len += deflater.deflate(out, len, out.length - len);
+            }
+            List<String> logins = users.stream().map(User::getLogin).toList();
+            return new Encoded(out, len, raw.length, crc(out, len), logins);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<User> decode(FileChannel ch, Block b) throws IOException, ClassNotFoundException {
+        if (b.offset < 0 || b.compressed < 0 || b.raw < 0 || b.offset + b.compressed > ch.size()) {
+            throw new IOException("block is out of file bounds");
+        }
+        ByteBuffer buf = ByteBuffer.allocate(b.compressed);
+        readFully(ch, buf, b.offset);
+        if (buf.position() != b.compressed) throw new IOException("block is truncated");
+        byte[] data = buf.array();
+        if (crc(data, data.length) != b.crc) throw new IOException("CRC mismatch");
+
+        byte[] raw = new byte[b.raw];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int len = 0;
+            while (len < raw.length && !inflater.finished()) {
+                int n = inflater.inflate(raw, len, raw.length - len);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                len += n;
+            }
+            if (len != raw.length || !inflater.finished()) throw new IOException("bad block length");
+        } catch (DataFormatException e) {
+            throw new IOException("bad compressed data", e);
+        } finally {
+            inflater.end();
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(raw))) {
+            List<User> users = (List<User>) in.readObject();
+            if (users.size() != b.logins.size()) throw new IOException("user count mismatch");
+            return users;
+        }
+    }
+
+    private static byte[] writeTable(List<Encoded> blocks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        long offset = 0;
+        for (Encoded e : blocks) {
+            out.writeLong(offset);
+            out.writeInt(e.compressed);
+            out.writeInt(e.raw);
+            out.writeInt(e.crc);
+            out.writeInt(e.logins.size());
+            for (String login : e.logins) out.writeUTF(login);
+            offset += e.compressed;
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static List<Block> readTable(FileChannel ch, int blockCount, int tableLength) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(tableLength + 4);
+        readFully(ch, buf, HEADER_BYTES);
+        byte[] table = buf.array();
+        int stored = buf.getInt(tableLength);
+        if (crc(table, tableLength) != stored) throw new IOException("Snapshot block table is corrupted");
+
+        long dataStart = HEADER_BYTES + (long) tableLength + 4;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(table, 0, tableLength));
+        List<Block> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            long offset = dataStart + in.readLong();
+            int compressed = in.readInt();
+            int raw = in.readInt();
+            int crc = in.readInt();
+            int count = in.readInt();
+            List<String> logins = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) logins.add(in.readUTF());
+            blocks.add(new Block(offset, compressed, raw, crc, logins));
+        }
+        return blocks;
+    }
+
+    private static int crc(byte[] data, int len) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, len);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position + buf.position());
+            if (n < 0) break;
+        }
+    }
+
+    /** Сбрасывает на диск запись каталога о переименовании; где каталог не открыть как файл (Windows) — пропускаем. */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Платформа не синхронизирует каталоги: сам снимок уже на диске, переименование атомарно
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    private static <T> T await(Future<T> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private record Encoded(byte[] data, int compressed, int raw, int crc, List<String> logins) {
+    }
+
+    private record Block(long offset, int compressed, int raw, int crc, List<String> logins) {
+    }
+
+    public record SnapshotStamp(Object fileKey, FileTime modified, long size) {
+    }
 }
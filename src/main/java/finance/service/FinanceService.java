@@ -1,31 +1,56 @@
 package finance.service;
 
+import finance.domain.CronSchedule;
+import finance.domain.RecurringRule;
 import finance.domain.Transaction;
 import finance.domain.TransactionType;
 import finance.domain.User;
 import finance.domain.Wallet;
+import finance.service.query.CompiledQuery;
+import finance.service.query.QueryParser;
+import finance.service.query.QueryResult;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.*;
 
 public class FinanceService {
 
+    private static final int QUERY_CACHE_SIZE = 64;
+
+    private final RecurringScheduler recurring = new RecurringScheduler();
+
+    // Скомпилированные запросы по токенам: повторяющиеся запросы дашбордов не разбираются заново
+    private final Map<List<?>, CompiledQuery> queryCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<?>, CompiledQuery> eldest) {
+            return size() > QUERY_CACHE_SIZE;
+        }
+    };
+
     public Result addIncome(User user, String category, BigDecimal amount, String comment) {
-        var v = validate(category, amount);
+        Wallet w = user.getWallet();
+        var v = validate(w, category, amount);
         if (!v.success) return v;
 
-        Wallet w = user.getWallet();
-        w.add(new Transaction(TransactionType.INCOME, category, amount, LocalDateTime.now(), comment));
+        LocalDateTime now = LocalDateTime.now();
+        recurring.materialize(user, now);
+        w.add(new Transaction(TransactionType.INCOME, category, amount, now, comment));
         return Result.ok("Income added.");
     }
 
     public Result addExpense(User user, String category, BigDecimal amount, String comment) {
-        var v = validate(category, amount);
+        Wallet w = user.getWallet();
+        var v = validate(w, category, amount);
         if (!v.success) return v;
 
-        Wallet w = user.getWallet();
-        w.add(new Transaction(TransactionType.EXPENSE, category, amount, LocalDateTime.now(), comment));
+        LocalDateTime now = LocalDateTime.now();
+        recurring.materialize(user, now);
+        w.add(new Transaction(TransactionType.EXPENSE, category, amount, now, comment));
 
         StringBuilder warn = new StringBuilder();
 
@@ -60,7 +85,48 @@ public class FinanceService {
         return Result.ok("Budget set.");
     }
 
+    public Result addRecurring(User user, TransactionType type, String category, BigDecimal amount, String schedule) {
+        Wallet w = user.getWallet();
+        var v = validate(w, category, amount);
+        if (!v.success) return v;
+
+        CronSchedule cron;
+        try {
+            cron = CronSchedule.parse(schedule);
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        }
+
+        RecurringRule rule = w.addRecurringRule(type, category, amount, cron, LocalDateTime.now());
+        if (rule.getNextDue() == null) {
+            w.removeRecurringRule(rule.getId());
+            return Result.error("Schedule never fires: " + schedule);
+        }
+        return Result.ok("Recurring rule #" + rule.getId() + " added. Next: " + rule.getNextDue());
+    }
+
+    public Result removeRecurring(User user, int id) {
+        if (!user.getWallet().removeRecurringRule(id)) {
+            return Result.error("Recurring rule not found: #" + id);
+        }
+        return Result.ok("Recurring rule #" + id + " removed.");
+    }
+
+    public List<RecurringRule> listRecurring(User user) {
+        recurring.materialize(user, LocalDateTime.now());
+        return user.getWallet().getRecurringRules();
+    }
+
+    public int materializeRecurring(User user) {
+        return recurring.materialize(user, LocalDateTime.now());
+    }
+
+    public int materializeRecurring(Collection<User> users) {
+        return recurring.materialize(users, LocalDateTime.now());
+    }
+
     public StatsReport buildStats(User user) {
+        recurring.materialize(user, LocalDateTime.now());
         Wallet w = user.getWallet();
 
         BigDecimal totalIncome = w.totalIncome();
@@ -82,6 +148,7 @@ public class FinanceService {
     }
 
     public MultiCategoryResult sumByCategories(User user, TransactionType type, List<String> categories) {
+        recurring.materialize(user, LocalDateTime.now());
         Wallet w = user.getWallet();
         Map<String, BigDecimal> byCat = w.sumsByCategory(type);
 
@@ -94,10 +161,66 @@ public class FinanceService {
         return new MultiCategoryResult(sum, notFound);
     }
 
-    private Result validate(String category, BigDecimal amount) {
+    public Result moveWalletToMappedLog(User user, Path dir) {
+        Wallet w = user.getWallet();
+        if (w.isMapped()) {
+            return Result.error("Wallet is already mapped: " + w.getMappedLogPath());
+        }
+
+        Path base = dir.resolve(mappedLogName(user.getLogin()));
+        try {
+            w.moveToMappedLog(base);
+        } catch (Exception e) {
+            return Result.error("Cannot move wallet to mapped log: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        return Result.ok("Wallet moved to mapped log: " + base + " (" + w.getTransactions().size() + " transactions)");
+    }
+
+    /**
+     * Имя файлов журнала: читаемая часть логина и хэш самого логина. Разные логины не совпадают,
+     * даже если совпала читаемая часть ({@code a b} и {@code a_b}) или ФС не различает регистр.
+     */
+    static String mappedLogName(String login) {
+        byte[] utf8 = login.getBytes(StandardCharsets.UTF_8);
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(utf8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        String readable = login.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (readable.length() > 32) readable = readable.substring(0, 32);
+        return readable + "-" + HexFormat.of().formatHex(digest, 0, 8);
+    }
+
+    /**
+     * Выполняет запрос вида {@code type=expense and category in (Food,Taxi) and amount>500 group by month}.
+     * Синтаксис см. {@link finance.service.query.QueryParser}; ошибка в запросе — {@link IllegalArgumentException}.
+     */
+    public QueryResult query(User user, String query) {
+        CompiledQuery compiled = compileQuery(query);
+        recurring.materialize(user, LocalDateTime.now());
+        return compiled.execute(user.getWallet());
+    }
+
+    public CompiledQuery compileQuery(String query) {
+        List<?> key = QueryParser.cacheKey(query);
+        synchronized (queryCache) {
+            CompiledQuery cached = queryCache.get(key);
+            if (cached != null) return cached;
+        }
+        CompiledQuery compiled = CompiledQuery.compile(query.trim());
+        synchronized (queryCache) {
+            queryCache.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    private Result validate(Wallet wallet, String category, BigDecimal amount) {
         if (isBlank(category)) return Result.error("Category must be non-empty.");
         if (amount == null) return Result.error("Amount must be a number.");
         if (amount.signum() <= 0) return Result.error("Amount must be > 0.");
+        if (!wallet.supportsAmount(amount)) return Result.error("Amount has too many digits for this wallet.");
         return Result.ok("OK");
     }
 
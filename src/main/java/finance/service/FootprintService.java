@@ -0,0 +1,85 @@
+package finance.service;
+
+import finance.domain.User;
+import finance.domain.Wallet;
+import finance.domain.WalletFootprint;
+
+import java.util.*;
+
+/**
+ * Отчёт об объёме данных по пользователям для команды {@code memory}.
+ * <p>
+ * Всё берётся из {@link WalletFootprint}, которые кошельки ведут сами, поэтому отчёт стоит O(пользователей),
+ * а не O(операций). Доля {@code data.dat} — оценка: снимок общий, его размер делится пропорционально
+ * оценке объёма кошельков в куче.
+ */
+public class FootprintService {
+
+    private static final long SKETCH_BYTES = 2_064;
+    private static final long USER_BYTES = 200;
+
+    public Report report(Collection<User> users, long dataFileBytes) {
+        List<Line> lines = new ArrayList<>(users.size());
+        Set<String> categories = new HashSet<>();
+        byte[] comments = WalletFootprint.newSketch();
+
+        long weightTotal = 0;
+        for (User u : users) {
+            Wallet w = u.getWallet();
+            WalletFootprint f = w.getFootprint();
+            long heap = estimateHeapBytes(w, f);
+            weightTotal += heap;
+            categories.addAll(f.getCategoryCounts().keySet());
+            f.mergeCommentsInto(comments);
+            lines.add(new Line(u.getLogin(), w.isMapped(), w.getTransactions().size(), heap,
+                    f.distinctCategories(), f.distinctCommentsEstimate(), w.mappedLogBytes(), 0));
+        }
+
+        long txTotal = 0;
+        long heapTotal = 0;
+        long mappedTotal = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            Line l = lines.get(i);
+            long share = weightTotal == 0 ? 0 : Math.round((double) dataFileBytes * l.heapBytes / weightTotal);
+            l = new Line(l.login, l.mapped, l.transactions, l.heapBytes, l.distinctCategories,
+                    l.distinctComments, l.mappedLogBytes, share);
+            lines.set(i, l);
+            txTotal += l.transactions;
+            heapTotal += l.heapBytes;
+            mappedTotal += l.mappedLogBytes;
+        }
+        lines.sort(Comparator.comparingLong(Line::heapBytes).reversed().thenComparing(Line::login));
+
+        return new Report(lines, txTotal, heapTotal, categories.size(), WalletFootprint.estimate(comments),
+                mappedTotal, dataFileBytes);
+    }
+
+    private long estimateHeapBytes(Wallet w, WalletFootprint f) {
+        long bytes = USER_BYTES + SKETCH_BYTES
+                + w.getBudgets().size() * WalletFootprint.BUDGET_BYTES
+                + f.distinctCategories() * WalletFootprint.MAPPED_CATEGORY_BYTES;
+        if (!w.isMapped()) {
+            bytes += f.getTransactions() * WalletFootprint.TRANSACTION_BYTES + f.getHeapStringBytes();
+        }
+        return bytes;
+    }
+
+    public record Line(String login,
+                       boolean mapped,
+                       long transactions,
+                       long heapBytes,
+                       int distinctCategories,
+                       long distinctComments,
+                       long mappedLogBytes,
+                       long dataFileShare) {
+    }
+
+    public record Report(List<Line> lines,
+                         long transactions,
+                         long heapBytes,
+                         int distinctCategories,
+                         long distinctComments,
+                         long mappedLogBytes,
+                         long dataFileBytes) {
+    }
+}
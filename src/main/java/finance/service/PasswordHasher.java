@@ -0,0 +1,133 @@
+package finance.service;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Солёные хэши паролей PBKDF2-HMAC-SHA256 с настраиваемым числом итераций.
+ * <p>
+ * Формат: {@code pbkdf2-sha256$<итерации>$<соль base64>$<хэш base64>}. Всё, что не начинается с префикса,
+ * считается старым паролем в открытом виде. Вычисления идут на ограниченном пуле потоков:
+ * при переполнении очереди задача отклоняется, а не копится.
+ */
+public class PasswordHasher {
+
+    public static final int DEFAULT_ITERATIONS = Integer.getInteger("finance.kdf.iterations", 120_000);
+
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final ExecutorService pool;
+
+    public PasswordHasher() {
+        this(DEFAULT_ITERATIONS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PasswordHasher(int iterations, int threads) {
+        if (iterations < 1) throw new IllegalArgumentException("Iterations must be >= 1");
+        this.iterations = iterations;
+
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                r -> {
+                    Thread t = new Thread(r, "password-hasher-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> hash(password));
+    }
+
+    public CompletableFuture<Boolean> verifyAsync(String password, String stored) {
+        if (!isHashed(stored)) {
+            // Старый пароль в открытом виде: KDF не нужен, сравниваем сразу
+            return CompletableFuture.completedFuture(constantTimeEquals(password, stored));
+        }
+        return submit(() -> verify(password, stored));
+    }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+    }
+
+    public boolean verify(String password, String stored) {
+        if (!isHashed(stored)) return constantTimeEquals(password, stored);
+
+        String[] p = stored.substring(PREFIX.length()).split("\\$");
+        if (p.length != 3) return false;
+        try {
+            int iter = Integer.parseInt(p[0]);
+            byte[] salt = Base64.getDecoder().decode(p[1]);
+            byte[] expected = Base64.getDecoder().decode(p[2]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, iter));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /** Старый пароль в открытом виде или хэш с другим числом итераций — пересчитать при следующем входе. */
+    public boolean needsRehash(String stored) {
+        if (!isHashed(stored)) return true;
+        int end = stored.indexOf('$', PREFIX.length());
+        return end < 0 || !stored.substring(PREFIX.length(), end).equals(String.valueOf(iterations));
+    }
+
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        try {
+            pool.execute(() -> {
+                try {
+                    f.complete(task.call());
+                } catch (Throwable e) {
+                    f.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            f.completeExceptionally(e);
+        }
+        return f;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static boolean constantTimeEquals(String a, String b) {
+        if (a == null || b == null) return false;
+        return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+}
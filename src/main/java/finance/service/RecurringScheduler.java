@@ -0,0 +1,58 @@
+package finance.service;
+
+import finance.domain.RecurringRule;
+import finance.domain.User;
+import finance.domain.Wallet;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Ленивое проведение регулярных операций.
+ * <p>
+ * Таймеров нет: правила хранят только дату следующего срабатывания, а операции добавляются пачкой,
+ * когда они кому-то нужны (статистика, проверка бюджета, сохранение). Пока этого не происходит,
+ * правила ничего не стоят.
+ */
+public class RecurringScheduler {
+
+    private static final Comparator<RecurringRule> BY_NEXT_DUE = Comparator.comparing(RecurringRule::getNextDue);
+
+    public int materialize(User user, LocalDateTime now) {
+        return materializeWallet(user.getWallet(), now);
+    }
+
+    public int materialize(Collection<User> users, LocalDateTime now) {
+        int total = 0;
+        for (User user : users) {
+            total += materializeWallet(user.getWallet(), now);
+        }
+        return total;
+    }
+
+    private int materializeWallet(Wallet wallet, LocalDateTime now) {
+        List<RecurringRule> rules = wallet.getRecurringRules();
+        if (rules.isEmpty() || wallet.isReadOnly()) return 0;
+
+        PriorityQueue<RecurringRule> due = null;
+        for (RecurringRule rule : rules) {
+            if (!rule.isDue(now)) continue;
+            if (due == null) due = new PriorityQueue<>(BY_NEXT_DUE);
+            due.add(rule);
+        }
+        if (due == null) return 0;
+
+        // Срабатывания разных правил добавляем по времени, чтобы операции в кошельке шли по порядку
+        int added = 0;
+        while (!due.isEmpty()) {
+            RecurringRule rule = due.poll();
+            wallet.add(rule.materializeNext());
+            added++;
+            if (rule.isDue(now)) due.add(rule);
+        }
+        return added;
+    }
+}
@@ -0,0 +1,105 @@
+package finance.service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш недавно проверенных входов, живущий только в памяти процесса.
+ * <p>
+ * После успешной проверки пароля через KDF запоминается HMAC от логина и пароля на случайном ключе процесса
+ * и выдаётся короткоживущий токен. Повторный вход тем же паролем или по токену до истечения срока
+ * обходится без KDF. Сам пароль не хранится.
+ */
+public class SessionCache {
+
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(Long.getLong("finance.session.ttl.seconds", 600));
+
+    private final Duration ttl;
+    private final Clock clock;
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<String, Session> byLogin = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> loginByToken = new ConcurrentHashMap<>();
+
+    public SessionCache() {
+        this(DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    public SessionCache(Duration ttl, Clock clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+        byte[] k = new byte[32];
+        random.nextBytes(k);
+        this.key = new SecretKeySpec(k, "HmacSHA256");
+    }
+
+    /** Запоминает успешную проверку и возвращает токен сессии. */
+    public String put(String login, String password) {
+        byte[] t = new byte[24];
+        random.nextBytes(t);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(t);
+
+        Session old = byLogin.put(login, new Session(mac(login, password), token, clock.instant().plus(ttl)));
+        if (old != null) loginByToken.remove(old.token);
+        loginByToken.put(token, login);
+        return token;
+    }
+
+    public boolean matches(String login, String password) {
+        Session s = live(login);
+        return s != null && MessageDigest.isEqual(s.mac, mac(login, password));
+    }
+
+    public Optional<String> tokenFor(String login) {
+        Session s = live(login);
+        return s == null ? Optional.empty() : Optional.of(s.token);
+    }
+
+    public Optional<String> loginForToken(String token) {
+        String login = loginByToken.get(token);
+        if (login == null) return Optional.empty();
+        Session s = live(login);
+        if (s == null || !s.token.equals(token)) return Optional.empty();
+        return Optional.of(login);
+    }
+
+    public void invalidate(String login) {
+        Session s = byLogin.remove(login);
+        if (s != null) loginByToken.remove(s.token);
+    }
+
+    private Session live(String login) {
+        Session s = byLogin.get(login);
+        if (s == null) return null;
+        if (clock.instant().isAfter(s.expiresAt)) {
+            if (byLogin.remove(login, s)) loginByToken.remove(s.token, login);
+            return null;
+        }
+        return s;
+    }
+
+    private byte[] mac(String login, String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            mac.update(login.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private record Session(byte[] mac, String token, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,55 @@
+package finance.service;
+
+import finance.domain.User;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Read-only копия данных основного процесса.
+ * <p>
+ * Основной процесс сохраняет {@code data.dat} подменой файла целиком, поэтому перед каждой командой
+ * достаточно сравнить отпечаток файла (inode, время, размер) и перечитать снимок, если он сменился.
+ * Журналы mapped-кошельков открываются только на чтение и видят новые записи основного процесса сразу,
+ * без перезагрузки снимка.
+ */
+public class SnapshotFollower {
+    private final FileStorage storage;
+    private final UserStore store;
+
+    private FileStorage.SnapshotStamp loadedStamp;
+    private boolean loaded;
+
+    public SnapshotFollower(FileStorage storage, UserStore store) {
+        this.storage = storage;
+        this.store = store;
+    }
+
+    /** Перечитывает снимок, если основной процесс его подменил. Возвращает {@code true}, если данные обновились. */
+    public boolean refresh() {
+        FileStorage.SnapshotStamp stamp = storage.snapshotStamp();
+        if (loaded && Objects.equals(stamp, loadedStamp)) return false;
+
+        Map<String, User> users;
+        try {
+            users = storage.loadUsers();
+        } catch (Exception e) {
+            // Оставляем прежнюю копию: следующая команда попробует ещё раз
+            System.out.println("WARNING: cannot reload " + storage.getFile() + ", serving previous snapshot.");
+            System.out.println("Reason: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+            return false;
+        }
+
+        for (User u : users.values()) {
+            u.getWallet().markReadOnly();
+        }
+        for (User u : store.allUsers()) {
+            u.getWallet().closeLog();
+        }
+
+        store.replaceAll(users);
+        loadedStamp = stamp;
+        loaded = true;
+        return true;
+    }
+}
@@ -0,0 +1,305 @@
+package finance.service.query;
+
+import finance.domain.Transaction;
+import finance.domain.TransactionType;
+import finance.domain.Wallet;
+import finance.domain.WalletIndex;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Запрос, скомпилированный один раз в предикат и функцию группировки.
+ * <p>
+ * Константы разобраны заранее, каждое условие превращено в отдельную лямбду под своё поле и оператор.
+ * Из верхнего уровня {@code and} извлекаются границы по дате и набор категорий: при выполнении они
+ * сужают перебор через {@link WalletIndex} (двоичный поиск по времени и списки позиций по категориям),
+ * а остальное проверяет предикат. Объект не зависит от кошелька и может переиспользоваться.
+ */
+public final class CompiledQuery {
+
+    private final String text;
+    private final Predicate<Transaction> predicate;
+    private final Function<Transaction, String> groupKey;
+    private final Query.GroupBy groupBy;
+
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final Set<String> categories;
+
+    private CompiledQuery(String text, Query q) {
+        this.text = text;
+        this.predicate = q.where() == null ? tx -> true : compile(q.where());
+        this.groupBy = q.groupBy();
+        this.groupKey = groupKey(q.groupBy());
+
+        LocalDateTime lo = null;
+        LocalDateTime hi = null;
+        Set<String> cats = null;
+        List<Query.Expr> conjuncts = q.where() instanceof Query.And and ? and.items()
+                : q.where() == null ? List.of() : List.of(q.where());
+        for (Query.Expr e : conjuncts) {
+            if (!(e instanceof Query.Cond c)) continue;
+            if (c.field() == Query.Field.DATE) {
+                LocalDate d = date(c.values().get(0));
+                LocalDateTime start = d.atStartOfDay();
+                LocalDateTime next = d.plusDays(1).atStartOfDay();
+                switch (c.op()) {
+                    case GE -> lo = max(lo, start);
+                    case GT -> lo = max(lo, next);
+                    case LT -> hi = min(hi, start);
+                    case LE -> hi = min(hi, next);
+                    case EQ -> {
+                        lo = max(lo, start);
+                        hi = min(hi, next);
+                    }
+                    default -> {
+                    }
+                }
+            } else if (c.field() == Query.Field.CATEGORY && (c.op() == Query.Op.EQ || c.op() == Query.Op.IN)) {
+                Set<String> s = new LinkedHashSet<>(c.values());
+                if (cats == null) cats = s;
+                else cats.retainAll(s);
+            }
+        }
+        this.from = lo;
+        this.to = hi;
+        this.categories = cats;
+    }
+
+    public static CompiledQuery compile(String text) {
+        return new CompiledQuery(text, QueryParser.parse(text));
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public QueryResult execute(Wallet wallet) {
+        List<Transaction> txs = wallet.getTransactions();
+        int lo = 0;
+        int hi = txs.size();
+        List<String> plan = new ArrayList<>();
+
+        WalletIndex index = (from != null || to != null || categories != null) ? wallet.getIndex() : null;
+        if (index != null && (from != null || to != null)) {
+            if (index.isTimeOrdered()) {
+                if (from != null) lo = WalletIndex.lowerBound(txs, from);
+                if (to != null) hi = Math.max(lo, WalletIndex.lowerBound(txs, to));
+                plan.add("time range [" + lo + ".." + hi + ")");
+            } else {
+                plan.add("time index unavailable (unordered wallet)");
+            }
+        }
+
+        Map<String, Agg> groups = new TreeMap<>();
+        long examined = 0;
+        if (categories != null) {
+            int[] positions = index.positions(categories, lo, hi);
+            plan.add("category index " + categories);
+            for (int p : positions) {
+                accept(groups, txs.get(p));
+            }
+            examined = positions.length;
+        } else {
+            if (plan.isEmpty()) plan.add("full scan");
+            for (int i = lo; i < hi; i++) {
+                accept(groups, txs.get(i));
+            }
+            examined = hi - lo;
+        }
+
+        List<QueryResult.Row> rows = new ArrayList<>(groups.size());
+        for (Map.Entry<String, Agg> e : groups.entrySet()) {
+            Agg a = e.getValue();
+            rows.add(new QueryResult.Row(e.getKey(), a.count, a.income, a.expense));
+        }
+        if (groupBy == Query.GroupBy.NONE && rows.isEmpty()) {
+            rows.add(new QueryResult.Row("total", 0, BigDecimal.ZERO, BigDecimal.ZERO));
+        }
+        return new QueryResult(rows, String.join(" + ", plan), examined, txs.size());
+    }
+
+    private void accept(Map<String, Agg> groups, Transaction tx) {
+        if (!predicate.test(tx)) return;
+        Agg a = groups.computeIfAbsent(groupKey.apply(tx), k -> new Agg());
+        a.count++;
+        if (tx.getType() == TransactionType.INCOME) a.income = a.income.add(tx.getAmount());
+        else a.expense = a.expense.add(tx.getAmount());
+    }
+
+    private static Predicate<Transaction> compile(Query.Expr e) {
+        if (e instanceof Query.And and) {
+            List<Predicate<Transaction>> ps = and.items().stream().map(CompiledQuery::compile).toList();
+            if (ps.size() == 2) return ps.get(0).and(ps.get(1));
+            return tx -> {
+                for (Predicate<Transaction> p : ps) if (!p.test(tx)) return false;
+                return true;
+            };
+        }
+        if (e instanceof Query.Or or) {
+            List<Predicate<Transaction>> ps = or.items().stream().map(CompiledQuery::compile).toList();
+            if (ps.size() == 2) return ps.get(0).or(ps.get(1));
+            return tx -> {
+                for (Predicate<Transaction> p : ps) if (p.test(tx)) return true;
+                return false;
+            };
+        }
+        if (e instanceof Query.Not not) {
+            return compile(not.item()).negate();
+        }
+        return compileCond((Query.Cond) e);
+    }
+
+    private static Predicate<Transaction> compileCond(Query.Cond c) {
+        List<String> v = c.values();
+        return switch (c.field()) {
+            case TYPE -> {
+                EnumSet<TransactionType> set = EnumSet.noneOf(TransactionType.class);
+                for (String s : v) set.add(type(s));
+                yield switch (c.op()) {
+                    case EQ, IN -> tx -> set.contains(tx.getType());
+                    case NE, NOT_IN -> tx -> !set.contains(tx.getType());
+                    default -> throw unsupported(c);
+                };
+            }
+            case CATEGORY -> switch (c.op()) {
+                case EQ -> {
+                    String cat = v.get(0);
+                    yield tx -> cat.equals(tx.getCategory());
+                }
+                case NE -> {
+                    String cat = v.get(0);
+                    yield tx -> !cat.equals(tx.getCategory());
+                }
+                case IN -> {
+                    Set<String> set = new HashSet<>(v);
+                    yield tx -> set.contains(tx.getCategory());
+                }
+                case NOT_IN -> {
+                    Set<String> set = new HashSet<>(v);
+                    yield tx -> !set.contains(tx.getCategory());
+                }
+                case CONTAINS -> {
+                    String part = v.get(0);
+                    yield tx -> tx.getCategory().contains(part);
+                }
+                default -> throw unsupported(c);
+            };
+            case AMOUNT -> {
+                if (c.op() == Query.Op.IN || c.op() == Query.Op.NOT_IN) {
+                    List<BigDecimal> list = v.stream().map(CompiledQuery::amount).toList();
+                    Predicate<Transaction> in = tx -> {
+                        for (BigDecimal a : list) if (tx.getAmount().compareTo(a) == 0) return true;
+                        return false;
+                    };
+                    yield c.op() == Query.Op.IN ? in : in.negate();
+                }
+                BigDecimal a = amount(v.get(0));
+                yield switch (c.op()) {
+                    case EQ -> tx -> tx.getAmount().compareTo(a) == 0;
+                    case NE -> tx -> tx.getAmount().compareTo(a) != 0;
+                    case GT -> tx -> tx.getAmount().compareTo(a) > 0;
+                    case GE -> tx -> tx.getAmount().compareTo(a) >= 0;
+                    case LT -> tx -> tx.getAmount().compareTo(a) < 0;
+                    case LE -> tx -> tx.getAmount().compareTo(a) <= 0;
+                    default -> throw unsupported(c);
+                };
+            }
+            case DATE -> {
+                if (c.op() == Query.Op.IN || c.op() == Query.Op.NOT_IN) {
+                    Set<LocalDate> set = new HashSet<>();
+                    for (String s : v) set.add(date(s));
+                    Predicate<Transaction> in = tx -> set.contains(tx.getCreatedAt().toLocalDate());
+                    yield c.op() == Query.Op.IN ? in : in.negate();
+                }
+                LocalDate d = date(v.get(0));
+                LocalDateTime start = d.atStartOfDay();
+                LocalDateTime next = d.plusDays(1).atStartOfDay();
+                yield switch (c.op()) {
+                    case EQ -> tx -> !tx.getCreatedAt().isBefore(start) && tx.getCreatedAt().isBefore(next);
+                    case NE -> tx -> tx.getCreatedAt().isBefore(start) || !tx.getCreatedAt().isBefore(next);
+                    case GT -> tx -> !tx.getCreatedAt().isBefore(next);
+                    case GE -> tx -> !tx.getCreatedAt().isBefore(start);
+                    case LT -> tx -> tx.getCreatedAt().isBefore(start);
+                    case LE -> tx -> tx.getCreatedAt().isBefore(next);
+                    default -> throw unsupported(c);
+                };
+            }
+            case COMMENT -> switch (c.op()) {
+                case EQ -> {
+                    String s = v.get(0);
+                    yield tx -> s.equals(Objects.toString(tx.getComment(), ""));
+                }
+                case NE -> {
+                    String s = v.get(0);
+                    yield tx -> !s.equals(Objects.toString(tx.getComment(), ""));
+                }
+                case CONTAINS -> {
+                    String part = v.get(0).toLowerCase(Locale.ROOT);
+                    yield tx -> tx.getComment() != null && tx.getComment().toLowerCase(Locale.ROOT).contains(part);
+                }
+                default -> throw unsupported(c);
+            };
+        };
+    }
+
+    private static Function<Transaction, String> groupKey(Query.GroupBy g) {
+        return switch (g) {
+            case NONE -> tx -> "total";
+            case DAY -> tx -> tx.getCreatedAt().toLocalDate().toString();
+            case MONTH -> tx -> String.format(Locale.ROOT, "%04d-%02d", tx.getCreatedAt().getYear(), tx.getCreatedAt().getMonthValue());
+            case YEAR -> tx -> String.valueOf(tx.getCreatedAt().getYear());
+            case CATEGORY -> Transaction::getCategory;
+            case TYPE -> tx -> tx.getType().name().toLowerCase(Locale.ROOT);
+        };
+    }
+
+    private static TransactionType type(String s) {
+        return switch (s.toLowerCase(Locale.ROOT)) {
+            case "income" -> TransactionType.INCOME;
+            case "expense" -> TransactionType.EXPENSE;
+            default -> throw new IllegalArgumentException("Invalid type: " + s + " (expected income or expense)");
+        };
+    }
+
+    private static BigDecimal amount(String s) {
+        try {
+            return new BigDecimal(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount: " + s);
+        }
+    }
+
+    private static LocalDate date(String s) {
+        try {
+            return LocalDate.parse(s);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + s + " (expected yyyy-MM-dd)");
+        }
+    }
+
+    private static IllegalArgumentException unsupported(Query.Cond c) {
+        return new IllegalArgumentException("Operator " + c.op().name().toLowerCase(Locale.ROOT).replace('_', ' ')
+                + " is not supported for " + c.field().name().toLowerCase(Locale.ROOT));
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a == null || b.isAfter(a) ? b : a;
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a == null || b.isBefore(a) ? b : a;
+    }
+
+    private static final class Agg {
+        long count;
+        BigDecimal income = BigDecimal.ZERO;
+        BigDecimal expense = BigDecimal.ZERO;
+    }
+}
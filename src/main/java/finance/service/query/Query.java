@@ -0,0 +1,28 @@
+package finance.service.query;
+
+import java.util.List;
+
+/** Разобранный запрос: условие (может отсутствовать) и группировка. */
+public record Query(Expr where, GroupBy groupBy) {
+
+    public enum Field { TYPE, CATEGORY, AMOUNT, DATE, COMMENT }
+
+    public enum Op { EQ, NE, GT, GE, LT, LE, IN, NOT_IN, CONTAINS }
+
+    public enum GroupBy { NONE, DAY, MONTH, YEAR, CATEGORY, TYPE }
+
+    public sealed interface Expr permits And, Or, Not, Cond {
+    }
+
+    public record And(List<Expr> items) implements Expr {
+    }
+
+    public record Or(List<Expr> items) implements Expr {
+    }
+
+    public record Not(Expr item) implements Expr {
+    }
+
+    public record Cond(Field field, Op op, List<String> values) implements Expr {
+    }
+}
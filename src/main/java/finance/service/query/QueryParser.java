@@ -0,0 +1,235 @@
+package finance.service.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Разбор выражений вида
+ * {@code type=expense and category in (Food,Taxi) and amount>500 and date>=2026-01-01 group by month}.
+ * <p>
+ * Поля: {@code type, category, amount, date, comment}; операторы {@code = != > >= < <=},
+ * {@code [not] in (...)}, {@code contains}; связки {@code and, or, not} и скобки.
+ * Группировка: {@code group by day|month|year|category|type}. Значения с пробелами берутся в кавычки.
+ * Ошибки разбора — {@link IllegalArgumentException} с понятным сообщением.
+ */
+public final class QueryParser {
+
+    private final List<Token> tokens;
+    private int pos;
+
+    private QueryParser(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    public static Query parse(String text) {
+        QueryParser p = new QueryParser(tokenize(text));
+        return p.query();
+    }
+
+    /**
+     * Ключ для кэша скомпилированных запросов: список токенов. Запросы, отличающиеся только пробелами
+     * между токенами, дают равные ключи; пробелы внутри кавычек сохраняются.
+     */
+    public static List<?> cacheKey(String text) {
+        return List.copyOf(tokenize(text));
+    }
+
+    private Query query() {
+        Query.Expr where = null;
+        if (!atEnd() && !peekKeyword("group")) {
+            where = or();
+        }
+
+        Query.GroupBy groupBy = Query.GroupBy.NONE;
+        if (peekKeyword("group")) {
+            pos++;
+            expectKeyword("by");
+            String g = expectWord("group field");
+            groupBy = switch (g.toLowerCase(Locale.ROOT)) {
+                case "day" -> Query.GroupBy.DAY;
+                case "month" -> Query.GroupBy.MONTH;
+                case "year" -> Query.GroupBy.YEAR;
+                case "category" -> Query.GroupBy.CATEGORY;
+                case "type" -> Query.GroupBy.TYPE;
+                default -> throw error("Unknown group by: " + g + " (expected day, month, year, category or type)");
+            };
+        }
+
+        if (!atEnd()) throw error("Unexpected '" + tokens.get(pos).text + "'");
+        return new Query(where, groupBy);
+    }
+
+    private Query.Expr or() {
+        List<Query.Expr> items = new ArrayList<>();
+        items.add(and());
+        while (peekKeyword("or")) {
+            pos++;
+            items.add(and());
+        }
+        return items.size() == 1 ? items.get(0) : new Query.Or(items);
+    }
+
+    private Query.Expr and() {
+        List<Query.Expr> items = new ArrayList<>();
+        items.add(unary());
+        while (peekKeyword("and")) {
+            pos++;
+            items.add(unary());
+        }
+        return items.size() == 1 ? items.get(0) : new Query.And(items);
+    }
+
+    private Query.Expr unary() {
+        if (peekKeyword("not")) {
+            pos++;
+            return new Query.Not(unary());
+        }
+        if (peek(Kind.LPAREN)) {
+            pos++;
+            Query.Expr e = or();
+            expect(Kind.RPAREN, "')'");
+            return e;
+        }
+        return condition();
+    }
+
+    private Query.Expr condition() {
+        String name = expectWord("field");
+        Query.Field field = switch (name.toLowerCase(Locale.ROOT)) {
+            case "type" -> Query.Field.TYPE;
+            case "category" -> Query.Field.CATEGORY;
+            case "amount" -> Query.Field.AMOUNT;
+            case "date" -> Query.Field.DATE;
+            case "comment" -> Query.Field.COMMENT;
+            default -> throw error("Unknown field: " + name + " (expected type, category, amount, date or comment)");
+        };
+
+        if (peekKeyword("not")) {
+            pos++;
+            expectKeyword("in");
+            return new Query.Cond(field, Query.Op.NOT_IN, list());
+        }
+        if (peekKeyword("in")) {
+            pos++;
+            return new Query.Cond(field, Query.Op.IN, list());
+        }
+        if (peekKeyword("contains")) {
+            pos++;
+            return new Query.Cond(field, Query.Op.CONTAINS, List.of(value()));
+        }
+
+        Token t = next("operator");
+        if (t.kind != Kind.OP) throw error("Expected operator after '" + name + "', got '" + t.text + "'");
+        Query.Op op = switch (t.text) {
+            case "=" -> Query.Op.EQ;
+            case "!=" -> Query.Op.NE;
+            case ">" -> Query.Op.GT;
+            case ">=" -> Query.Op.GE;
+            case "<" -> Query.Op.LT;
+            default -> Query.Op.LE;
+        };
+        return new Query.Cond(field, op, List.of(value()));
+    }
+
+    private List<String> list() {
+        expect(Kind.LPAREN, "'('");
+        List<String> values = new ArrayList<>();
+        values.add(value());
+        while (peek(Kind.COMMA)) {
+            pos++;
+            values.add(value());
+        }
+        expect(Kind.RPAREN, "')'");
+        return values;
+    }
+
+    private String value() {
+        Token t = next("value");
+        if (t.kind != Kind.WORD && t.kind != Kind.STRING) throw error("Expected value, got '" + t.text + "'");
+        return t.text;
+    }
+
+    private boolean atEnd() {
+        return pos >= tokens.size();
+    }
+
+    private boolean peek(Kind kind) {
+        return !atEnd() && tokens.get(pos).kind == kind;
+    }
+
+    private boolean peekKeyword(String kw) {
+        return peek(Kind.WORD) && tokens.get(pos).text.equalsIgnoreCase(kw);
+    }
+
+    private Token next(String what) {
+        if (atEnd()) throw error("Unexpected end of query, expected " + what);
+        return tokens.get(pos++);
+    }
+
+    private void expect(Kind kind, String what) {
+        Token t = next(what);
+        if (t.kind != kind) throw error("Expected " + what + ", got '" + t.text + "'");
+    }
+
+    private void expectKeyword(String kw) {
+        Token t = next("'" + kw + "'");
+        if (t.kind != Kind.WORD || !t.text.equalsIgnoreCase(kw)) throw error("Expected '" + kw + "', got '" + t.text + "'");
+    }
+
+    private String expectWord(String what) {
+        Token t = next(what);
+        if (t.kind != Kind.WORD) throw error("Expected " + what + ", got '" + t.text + "'");
+        return t.text;
+    }
+
+    private static IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException(msg);
+    }
+
+    private static List<Token> tokenize(String s) {
+        List<Token> out = new ArrayList<>();
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(') {
+                out.add(new Token(Kind.LPAREN, "("));
+                i++;
+            } else if (c == ')') {
+                out.add(new Token(Kind.RPAREN, ")"));
+                i++;
+            } else if (c == ',') {
+                out.add(new Token(Kind.COMMA, ","));
+                i++;
+            } else if (c == '\'' || c == '"') {
+                int end = s.indexOf(c, i + 1);
+                if (end < 0) throw error("Unterminated string starting at position " + (i + 1));
+                out.add(new Token(Kind.STRING, s.substring(i + 1, end)));
+                i = end + 1;
+            } else if (c == '=' || c == '<' || c == '>' || c == '!') {
+                boolean eq = i + 1 < s.length() && s.charAt(i + 1) == '=';
+                if (c == '!' && !eq) throw error("Unexpected '!' at position " + (i + 1));
+                out.add(new Token(Kind.OP, eq && c != '=' ? c + "=" : String.valueOf(c)));
+                i += eq && c != '=' ? 2 : 1;
+            } else if (isWordChar(c)) {
+                int start = i;
+                while (i < s.length() && isWordChar(s.charAt(i))) i++;
+                out.add(new Token(Kind.WORD, s.substring(start, i)));
+            } else {
+                throw error("Unexpected character '" + c + "' at position " + (i + 1));
+            }
+        }
+        return out;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':' || c == '+';
+    }
+
+    private enum Kind { WORD, STRING, OP, LPAREN, RPAREN, COMMA }
+
+    private record Token(Kind kind, String text) {
+    }
+}
@@ -0,0 +1,21 @@
+package finance.service.query;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public class QueryResult {
+    public final List<Row> rows;
+    public final String plan;
+    public final long examined;
+    public final long total;
+
+    public QueryResult(List<Row> rows, String plan, long examined, long total) {
+        this.rows = rows;
+        this.plan = plan;
+        this.examined = examined;
+        this.total = total;
+    }
+
+    public record Row(String group, long count, BigDecimal income, BigDecimal expense) {
+    }
+}
@@ -0,0 +1,76 @@
+package finance.tools;
+
+import finance.cli.CommandLoop;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Тренировочный прогон для AppCDS-архива: {@code java -XX:ArchiveClassesAtExit=finance.jsa -jar finance.jar --cds-training}.
+ * <p>
+ * Проходит обычный путь приложения во временном каталоге: старт {@link CommandLoop}, регистрация, вход, операции,
+ * статистика, запрос, экспорт, сохранение и повторная загрузка. Все загруженные при этом классы попадают в архив,
+ * и при реальном запуске JVM берёт их оттуда уже разобранными и проверенными.
+ */
+public class CdsTraining {
+
+    private static final String SCRIPT = """
+            help
+            whoami
+            register trainer trainer
+            login trainer trainer
+            budget Food 4000
+            income Salary 50000 first
+            expense Food 1200 lunch
+            expense Taxi 300
+            recurring add expense Rent 20000 @monthly
+            recurring list
+            stats
+            stats categories expense Food,Taxi
+            query type=expense and category in (Food,Taxi) and amount>100 group by month
+            export csv %1$s/tx.csv
+            export json %1$s/tx.json.gz --gzip
+            wallet
+            memory
+            statsout
+            logout
+            login trainer trainer
+            save
+            exit
+            """;
+
+    public static void run() throws IOException {
+        Path dir = Files.createTempDirectory("finance-cds");
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        try {
+            String script = String.format(SCRIPT, dir);
+            System.setIn(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+            System.setOut(new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8));
+
+            String data = dir.resolve("data.dat").toString();
+            new CommandLoop(data).run();
+
+            // Второй процесс-цикл читает то, что записал первый
+            CommandLoop reload = new CommandLoop(data);
+            reload.load();
+            reload.execute("login trainer trainer");
+            reload.execute("stats");
+        } finally {
+            System.setIn(stdin);
+            System.setOut(stdout);
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println("CDS training run finished.");
+    }
+}
@@ -0,0 +1,352 @@
+package finance.tools;
+
+import finance.cli.CommandLoop;
+import finance.cli.CommandResult;
+import finance.domain.Transaction;
+import finance.domain.TransactionType;
+import finance.domain.User;
+import finance.domain.Wallet;
+import finance.service.FileStorage;
+import finance.service.PasswordHasher;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Генератор синтетической нагрузки и прогон её через {@link CommandLoop}.
+ * <p>
+ * {@code generate} создаёт {@code data.dat} с N пользователями и сценарий команд {@code commands.txt},
+ * {@code replay} загружает копию {@code data.dat}, выполняет сценарий и пишет {@code report.txt},
+ * {@code all} делает и то и другое. При одинаковых параметрах и {@code --seed} данные и сценарий совпадают.
+ */
+public class LoadTest {
+
+    private static final String DATA_FILE = "data.dat";
+    private static final String REPLAY_DATA_FILE = "replay.dat";
+    private static final String SCRIPT_FILE = "commands.txt";
+    private static final String REPORT_FILE = "report.txt";
+
+    private final Map<String, String> opts;
+
+    private final int users;
+    private final int txPerUser;
+    private final int categories;
+    private final int budgets;
+    private final double zipf;
+    private final int days;
+    private final int commandsPerUser;
+    private final long seed;
+    private final int kdfIterations;
+    private final Path outDir;
+
+    public LoadTest(Map<String, String> opts) {
+        this.opts = opts;
+        this.users = intOpt("users", 100);
+        this.txPerUser = intOpt("tx", 1_000);
+        this.categories = intOpt("categories", 20);
+        this.budgets = intOpt("budgets", 5);
+        this.zipf = Double.parseDouble(opts.getOrDefault("zipf", "1.1"));
+        this.days = intOpt("days", 365);
+        this.commandsPerUser = intOpt("commands", 50);
+        this.seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+        this.kdfIterations = intOpt("kdf-iterations", PasswordHasher.DEFAULT_ITERATIONS);
+        this.outDir = Path.of(opts.getOrDefault("out", "target/loadtest"));
+    }
+
+    public static void main(String[] args) throws IOException {
+        String mode = "all";
+        Map<String, String> opts = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.startsWith("--") && i + 1 < args.length) {
+                opts.put(a.substring(2), args[++i]);
+            } else if (!a.startsWith("--")) {
+                mode = a;
+            } else {
+                usage();
+                return;
+            }
+        }
+
+        LoadTest t = new LoadTest(opts);
+        switch (mode) {
+            case "generate" -> t.generate();
+            case "replay" -> t.replay();
+            case "all" -> {
+                t.generate();
+                t.replay();
+            }
+            default -> usage();
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: LoadTest [generate|replay|all] [--users N] [--tx M] [--categories K] [--budgets B]");
+        System.out.println("                [--zipf S] [--days D] [--commands C] [--seed X] [--kdf-iterations I] [--out DIR]");
+    }
+
+    public void generate() throws IOException {
+        Files.createDirectories(outDir);
+        Random rnd = new Random(seed);
+        Zipf catDist = new Zipf(categories, zipf);
+        LocalDateTime end = LocalDateTime.of(2026, 1, 1, 0, 0);
+        LocalDateTime start = end.minusDays(days);
+        long periodSeconds = ChronoUnit.SECONDS.between(start, end);
+
+        long t0 = System.nanoTime();
+        // Соль случайная, поэтому хэши от запуска к запуску разные; на операции и сценарий это не влияет
+        PasswordHasher hasher = new PasswordHasher(kdfIterations, 1);
+        String[] hashes = IntStream.range(0, users).parallel()
+                .mapToObj(u -> hasher.hash(password(u)))
+                .toArray(String[]::new);
+
+        Map<String, User> data = new HashMap<>();
+        for (int u = 0; u < users; u++) {
+            Wallet w = new Wallet();
+            for (int b = 0; b < Math.min(budgets, categories); b++) {
+                w.setBudget(category(b), BigDecimal.valueOf(1_000 + rnd.nextInt(50_000)));
+            }
+
+            // Время растёт монотонно: равномерная сетка по периоду с небольшим разбросом
+            double step = (double) periodSeconds / Math.max(1, txPerUser);
+            for (int i = 0; i < txPerUser; i++) {
+                long sec = (long) (i * step + rnd.nextDouble() * step);
+                TransactionType type = rnd.nextInt(5) == 0 ? TransactionType.INCOME : TransactionType.EXPENSE;
+                w.add(new Transaction(type, category(catDist.sample(rnd)), amount(rnd, type),
+                        start.plusSeconds(sec), rnd.nextInt(4) == 0 ? "note " + rnd.nextInt(1_000) : ""));
+            }
+            data.put(login(u), new User(login(u), hashes[u], w));
+        }
+        new FileStorage(outDir.resolve(DATA_FILE).toString()).saveUsers(data);
+        long dataMs = (System.nanoTime() - t0) / 1_000_000;
+
+        Path script = outDir.resolve(SCRIPT_FILE);
+        long lines = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(script, StandardCharsets.UTF_8)) {
+            for (int u = 0; u < users; u++) {
+                out.write("login " + login(u) + " " + password(u) + "\n");
+                lines++;
+                for (int c = 0; c < commandsPerUser; c++) {
+                    out.write(command(rnd, catDist));
+                    out.write('\n');
+                    lines++;
+                }
+                out.write("logout\n");
+                lines++;
+            }
+            out.write("exit\n");
+            lines++;
+        }
+
+        System.out.println("Generated " + users + " users x " + txPerUser + " transactions in " + dataMs + " ms: "
+                + outDir.resolve(DATA_FILE) + " (" + Files.size(outDir.resolve(DATA_FILE)) + " bytes)");
+        System.out.println("Generated script with " + lines + " commands: " + script);
+    }
+
+    public void replay() throws IOException {
+        Path data = outDir.resolve(DATA_FILE);
+        Path script = outDir.resolve(SCRIPT_FILE);
+        if (!Files.exists(data) || !Files.exists(script)) {
+            System.out.println("Nothing to replay in " + outDir + ", run 'generate' first.");
+            return;
+        }
+
+        // Работаем с копией, чтобы сохранение в конце не меняло сгенерированные данные
+        Path work = outDir.resolve(REPLAY_DATA_FILE);
+        Files.copy(data, work, StandardCopyOption.REPLACE_EXISTING);
+        List<String> commands = Files.readAllLines(script, StandardCharsets.UTF_8);
+
+        PrintStream console = System.out;
+        PrintStream devNull = new PrintStream(OutputStream.nullOutputStream());
+        Map<String, List<Long>> byCommand = new TreeMap<>();
+        List<Long> all = new ArrayList<>(commands.size());
+        long startupNanos;
+        long heapAfterLoad;
+        long replayNanos;
+        long saveNanos = 0;
+        // Та же стоимость KDF, что и при генерации: иначе каждый вход пересчитывает хэш под стоимость по умолчанию
+        CountingHasher hasher = new CountingHasher(kdfIterations);
+
+        System.setOut(devNull);
+        try {
+            long t0 = System.nanoTime();
+            CommandLoop loop = new CommandLoop(work.toString(), false, hasher);
+            loop.load();
+            startupNanos = System.nanoTime() - t0;
+            heapAfterLoad = usedHeapAfterGc();
+
+            long r0 = System.nanoTime();
+            for (String line : commands) {
+                String cmd = line.trim().split("\\s+")[0];
+                if (cmd.equals("exit")) {
+                    long s0 = System.nanoTime();
+                    loop.save();
+                    saveNanos = System.nanoTime() - s0;
+                    break;
+                }
+                long c0 = System.nanoTime();
+                CommandResult r = loop.execute(line);
+                long dt = System.nanoTime() - c0;
+                all.add(dt);
+                byCommand.computeIfAbsent(cmd, k -> new ArrayList<>()).add(dt);
+                if (r == CommandResult.EXIT) break;
+            }
+            replayNanos = System.nanoTime() - r0 - saveNanos;
+        } finally {
+            System.setOut(console);
+        }
+        long heapAfterReplay = usedHeapAfterGc();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Load test report\n");
+        sb.append("================\n");
+        sb.append("JVM:          ").append(System.getProperty("java.vm.name")).append(' ')
+                .append(System.getProperty("java.version")).append(", ")
+                .append(Runtime.getRuntime().availableProcessors()).append(" cpus, max heap ")
+                .append(mb(Runtime.getRuntime().maxMemory())).append('\n');
+        sb.append("JVM args:     ").append(ManagementFactory.getRuntimeMXBean().getInputArguments()).append('\n');
+        sb.append("Parameters:   users=").append(users).append(" tx=").append(txPerUser)
+                .append(" categories=").append(categories).append(" budgets=").append(budgets)
+                .append(" zipf=").append(zipf).append(" days=").append(days)
+                .append(" commands=").append(commandsPerUser).append(" seed=").append(seed)
+                .append(" kdf-iterations=").append(kdfIterations).append('\n');
+        sb.append("Data file:    ").append(Files.size(data)).append(" bytes\n");
+        sb.append('\n');
+        sb.append("Startup (load):     ").append(ms(startupNanos)).append('\n');
+        sb.append("Heap after load:    ").append(mb(heapAfterLoad)).append('\n');
+        sb.append("Heap after replay:  ").append(mb(heapAfterReplay)).append('\n');
+        sb.append("Commands:           ").append(all.size()).append(" in ").append(ms(replayNanos)).append('\n');
+        sb.append("Throughput:         ").append(String.format(Locale.ROOT, "%.1f", all.size() * 1e9 / Math.max(1, replayNanos)))
+                .append(" commands/s\n");
+        sb.append("Save (exit):        ").append(ms(saveNanos)).append('\n');
+        sb.append("Password rehashes:  ").append(hasher.rehashes.get()).append(hasher.rehashes.get() == 0
+                ? " (no logins migrated)\n"
+                : " (stored hashes differ from kdf-iterations=" + kdfIterations + ", logins timed with migration)\n");
+        sb.append('\n');
+        sb.append(String.format(Locale.ROOT, "%-10s %8s %10s %10s %10s %10s%n", "command", "count", "p50", "p90", "p99", "max"));
+        sb.append(latencyRow("all", all));
+        for (Map.Entry<String, List<Long>> e : byCommand.entrySet()) {
+            sb.append(latencyRow(e.getKey(), e.getValue()));
+        }
+
+        Files.writeString(outDir.resolve(REPORT_FILE), sb.toString(), StandardCharsets.UTF_8);
+        System.out.print(sb);
+        System.out.println();
+        System.out.println("Report written to: " + outDir.resolve(REPORT_FILE));
+    }
+
+    private String command(Random rnd, Zipf catDist) {
+        int p = rnd.nextInt(100);
+        String cat = category(catDist.sample(rnd));
+        if (p < 55) return "expense " + cat + " " + amount(rnd, TransactionType.EXPENSE).toPlainString();
+        if (p < 70) return "income " + cat + " " + amount(rnd, TransactionType.INCOME).toPlainString();
+        if (p < 75) return "budget " + cat + " " + (1_000 + rnd.nextInt(50_000));
+        if (p < 85) return "stats";
+        if (p < 90) return rnd.nextBoolean() ? "stats income" : "stats expense";
+        return "stats categories expense " + cat + "," + category(catDist.sample(rnd));
+    }
+
+    private static BigDecimal amount(Random rnd, TransactionType type) {
+        long cents = type == TransactionType.INCOME
+                ? 1_000_00 + rnd.nextInt(100_000_00)
+                : 1_00 + rnd.nextInt(5_000_00);
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static String category(int k) {
+        return String.format(Locale.ROOT, "Cat%03d", k + 1);
+    }
+
+    private static String login(int u) {
+        return "user" + u;
+    }
+
+    private static String password(int u) {
+        return "pw" + u;
+    }
+
+    private static String latencyRow(String name, List<Long> nanos) {
+        if (nanos.isEmpty()) return "";
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        return String.format(Locale.ROOT, "%-10s %8d %10s %10s %10s %10s%n", name, sorted.length,
+                us(percentile(sorted, 50)), us(percentile(sorted, 90)), us(percentile(sorted, 99)),
+                us(sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static String us(long nanos) {
+        return String.format(Locale.ROOT, "%.1fus", nanos / 1_000.0);
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.1f ms", nanos / 1_000_000.0);
+    }
+
+    private static String mb(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private int intOpt(String name, int def) {
+        return Integer.parseInt(opts.getOrDefault(name, String.valueOf(def)));
+    }
+
+    /** Считает пересчёты хэшей при входе: миграция со старой стоимостью или из открытого пароля. */
+    private static final class CountingHasher extends PasswordHasher {
+        final AtomicInteger rehashes = new AtomicInteger();
+
+        CountingHasher(int iterations) {
+            super(iterations, Runtime.getRuntime().availableProcessors());
+        }
+
+        @Override
+        public String hash(String password) {
+            rehashes.incrementAndGet();
+            return super.hash(password);
+        }
+    }
+
+    /** Распределение Ципфа на {@code 0..n-1}: ранг k выбирается с весом 1/(k+1)^s. */
+    static final class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double s) {
+            cdf = new double[Math.max(1, n)];
+            double sum = 0;
+            for (int k = 0; k < cdf.length; k++) {
+                sum += 1.0 / Math.pow(k + 1, s);
+                cdf[k] = sum;
+            }
+            for (int k = 0; k < cdf.length; k++) {
+                cdf[k] /= sum;
+            }
+        }
+
+        int sample(Random rnd) {
+            int idx = Arrays.binarySearch(cdf, rnd.nextDouble());
+            return Math.min(cdf.length - 1, idx >= 0 ? idx : -idx - 1);
+        }
+    }
+}
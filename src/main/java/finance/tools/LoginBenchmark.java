@@ -0,0 +1,100 @@
+package finance.tools;
+
+import finance.domain.User;
+import finance.domain.Wallet;
+import finance.service.AuthService;
+import finance.service.PasswordHasher;
+import finance.service.SessionCache;
+import finance.service.UserStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Сколько входов в секунду выдерживает {@link AuthService} при разной стоимости KDF.
+ * <p>
+ * Для каждого числа итераций: {@code cold} — первые входы всех пользователей (полный PBKDF2 на пуле),
+ * {@code cached} — повторные входы теми же паролями через {@link SessionCache},
+ * {@code migrate} — первые входы пользователей со старыми паролями в открытом виде (проверка + пересчёт хэша).
+ * <p>
+ * Запуск: {@code java -cp target/classes finance.tools.LoginBenchmark [--users N] [--threads T] [--iterations 10000,50000,...]}
+ */
+public class LoginBenchmark {
+
+    // Не больше очереди пула PasswordHasher, чтобы пакет не отклонялся
+    private static final int BATCH = 128;
+
+    public static void main(String[] args) {
+        int users = 64;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int[] costs = {10_000, 50_000, PasswordHasher.DEFAULT_ITERATIONS, 250_000};
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--users" -> users = Integer.parseInt(args[i + 1]);
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--iterations" -> costs = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                default -> {
+                    System.out.println("Usage: LoginBenchmark [--users N] [--threads T] [--iterations 10000,50000,...]");
+                    return;
+                }
+            }
+        }
+
+        System.out.println("Login benchmark: " + users + " users, " + threads + " hasher threads, "
+                + Runtime.getRuntime().availableProcessors() + " cpus");
+
+        // Прогрев JIT, иначе первая строка таблицы занижена
+        PasswordHasher warmup = new PasswordHasher(10_000, 1);
+        for (int i = 0; i < 50; i++) warmup.hash(password(i));
+
+        System.out.println(String.format(Locale.ROOT, "%12s %14s %14s %14s", "iterations", "cold/s", "cached/s", "migrate/s"));
+
+        for (int cost : costs) {
+            PasswordHasher hasher = new PasswordHasher(cost, threads);
+
+            UserStore store = new UserStore();
+            UserStore legacy = new UserStore();
+            String[] hashes = IntStream.range(0, users).parallel()
+                    .mapToObj(u -> hasher.hash(password(u)))
+                    .toArray(String[]::new);
+            for (int u = 0; u < users; u++) {
+                store.put(new User(login(u), hashes[u], new Wallet()));
+                legacy.put(new User(login(u), password(u), new Wallet()));
+            }
+
+            AuthService auth = new AuthService(store, hasher, new SessionCache());
+            double cold = run(auth, users);
+            double cached = run(auth, users);
+            double migrate = run(new AuthService(legacy, hasher, new SessionCache()), users);
+
+            System.out.println(String.format(Locale.ROOT, "%12d %14.1f %14.1f %14.1f", cost, cold, cached, migrate));
+        }
+    }
+
+    private static double run(AuthService auth, int users) {
+        long t0 = System.nanoTime();
+        for (int from = 0; from < users; from += BATCH) {
+            List<CompletableFuture<AuthService.Result>> batch = new ArrayList<>();
+            for (int u = from; u < Math.min(users, from + BATCH); u++) {
+                batch.add(auth.authenticate(login(u), password(u)));
+            }
+            for (var f : batch) {
+                if (!f.join().success()) throw new IllegalStateException(f.join().message());
+            }
+        }
+        return users * 1e9 / (System.nanoTime() - t0);
+    }
+
+    private static String login(int u) {
+        return "user" + u;
+    }
+
+    private static String password(int u) {
+        return "pw" + u;
+    }
+}
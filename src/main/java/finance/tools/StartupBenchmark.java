@@ -0,0 +1,125 @@
+package finance.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Время старта CLI в отдельном процессе: до первого приглашения ({@code prompt}) и до результата первой команды
+ * ({@code first cmd}), от запуска процесса. Каждый прогон — в новом пустом каталоге, то есть с пустым хранилищем.
+ * <p>
+ * Варианты: {@code classes} — {@code java -cp target/classes}, {@code jar} — {@code java -jar target/finance.jar},
+ * {@code launcher} — {@code bin/finance} (AppCDS-архив {@code target/finance.jsa}, если он собран).
+ * Нужен {@code ./mvnw package}.
+ * <p>
+ * Запуск: {@code java -cp target/classes finance.tools.StartupBenchmark [--runs N] [--command "login nobody nobody"]}
+ */
+public class StartupBenchmark {
+
+    private static final byte[] PROMPT = "> ".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        int runs = 10;
+        String command = "login nobody nobody";
+        Path root = Path.of("").toAbsolutePath();
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--runs" -> runs = Integer.parseInt(args[i + 1]);
+                case "--command" -> command = args[i + 1];
+                case "--root" -> root = Path.of(args[i + 1]).toAbsolutePath();
+                default -> {
+                    System.out.println("Usage: StartupBenchmark [--runs N] [--command \"login nobody nobody\"] [--root DIR]");
+                    return;
+                }
+            }
+        }
+
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Path classes = root.resolve("target/classes");
+        Path jar = root.resolve("target/finance.jar");
+        Path launcher = root.resolve("bin/finance");
+
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        variants.put("classes", List.of(java, "-cp", classes.toString(), "finance.Main"));
+        if (Files.exists(jar)) {
+            variants.put("jar", List.of(java, "-jar", jar.toString()));
+            variants.put("launcher", List.of(launcher.toString()));
+        } else {
+            System.out.println("No " + jar + ": run ./mvnw package to measure the jar and the launcher.");
+        }
+
+        System.out.println("Startup benchmark: " + runs + " runs per variant, empty store, first command: " + command
+                + (Files.exists(root.resolve("target/finance.jsa")) ? "" : " (no AppCDS archive)"));
+        System.out.println(String.format(Locale.ROOT, "%10s %14s %14s %14s %14s",
+                "variant", "prompt p50", "prompt min", "first cmd p50", "first cmd min"));
+
+        for (Map.Entry<String, List<String>> v : variants.entrySet()) {
+            // Первый запуск прогревает файловый кэш и не учитывается
+            measure(v.getValue(), command);
+            long[] prompt = new long[runs];
+            long[] first = new long[runs];
+            for (int r = 0; r < runs; r++) {
+                long[] t = measure(v.getValue(), command);
+                prompt[r] = t[0];
+                first[r] = t[1];
+            }
+            Arrays.sort(prompt);
+            Arrays.sort(first);
+            System.out.println(String.format(Locale.ROOT, "%10s %11.1f ms %11.1f ms %11.1f ms %11.1f ms", v.getKey(),
+                    prompt[runs / 2] / 1e6, prompt[0] / 1e6, first[runs / 2] / 1e6, first[0] / 1e6));
+        }
+    }
+
+    private static long[] measure(List<String> cmd, String command) throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("finance-startup");
+        try {
+            ProcessBuilder pb = new ProcessBuilder(cmd).directory(dir.toFile()).redirectErrorStream(true);
+            long t0 = System.nanoTime();
+            Process p = pb.start();
+            InputStream out = p.getInputStream();
+            OutputStream in = p.getOutputStream();
+
+            awaitPrompt(out);
+            long prompt = System.nanoTime() - t0;
+
+            in.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            in.flush();
+            awaitPrompt(out);
+            long first = System.nanoTime() - t0;
+
+            in.write("exit\n".getBytes(StandardCharsets.UTF_8));
+            in.close();
+            out.transferTo(OutputStream.nullOutputStream());
+            p.waitFor();
+            return new long[]{prompt, first};
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    private static void awaitPrompt(InputStream out) throws IOException {
+        ByteArrayOutputStream seen = new ByteArrayOutputStream();
+        int matched = 0;
+        while (true) {
+            int b = out.read();
+            if (b < 0) throw new IOException("Process exited before printing a prompt, output: " + seen);
+            seen.write(b);
+            if (b == (PROMPT[matched] & 0xFF)) {
+                if (++matched == PROMPT.length) {
+                    if (out.available() == 0) return;
+                    matched = 0;
+                }
+            } else {
+                matched = b == (PROMPT[0] & 0xFF) ? 1 : 0;
+            }
+        }
+    }
+}
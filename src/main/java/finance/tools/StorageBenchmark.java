@@ -0,0 +1,125 @@
+package finance.tools;
+
+import finance.domain.Transaction;
+import finance.domain.TransactionType;
+import finance.domain.User;
+import finance.domain.Wallet;
+import finance.service.FileStorage;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Время сохранения и загрузки снимка {@link FileStorage} при разном числе потоков.
+ * <p>
+ * Данные генерируются в памяти, затем для каждого числа потоков снимок сохраняется и читается
+ * {@code --rounds} раз; в таблице медианы. Строка {@code legacy} — прежний формат: один
+ * сериализованный {@code Map} без сжатия, в одном потоке.
+ * <p>
+ * Запуск: {@code java -cp target/classes finance.tools.StorageBenchmark [--users N] [--tx M] [--threads 1,4,16] [--rounds R] [--out DIR]}
+ */
+public class StorageBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int users = 2_000;
+        int txPerUser = 500;
+        int rounds = 3;
+        int[] threadCounts = {1, 4, 16};
+        Path out = Path.of("target", "storagebench");
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--users" -> users = Integer.parseInt(args[i + 1]);
+                case "--tx" -> txPerUser = Integer.parseInt(args[i + 1]);
+                case "--rounds" -> rounds = Integer.parseInt(args[i + 1]);
+                case "--threads" -> threadCounts = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--out" -> out = Path.of(args[i + 1]);
+                default -> {
+                    System.out.println("Usage: StorageBenchmark [--users N] [--tx M] [--threads 1,4,16] [--rounds R] [--out DIR]");
+                    return;
+                }
+            }
+        }
+
+        Files.createDirectories(out);
+        Map<String, User> data = generate(users, txPerUser);
+        System.out.println("Storage benchmark: " + users + " users x " + txPerUser + " transactions, "
+                + Runtime.getRuntime().availableProcessors() + " cpus, median of " + rounds);
+        System.out.println(String.format(Locale.ROOT, "%8s %10s %10s %12s", "threads", "save ms", "load ms", "file"));
+
+        Path legacy = out.resolve("legacy.dat");
+        long[] save = new long[rounds];
+        long[] load = new long[rounds];
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            try (ObjectOutputStream o = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(legacy)))) {
+                o.writeObject(data);
+            }
+            save[r] = System.nanoTime() - t0;
+            System.gc();
+            t0 = System.nanoTime();
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(legacy)))) {
+                in.readObject();
+            }
+            load[r] = System.nanoTime() - t0;
+        }
+        row("legacy", save, load, Files.size(legacy));
+
+        for (int threads : threadCounts) {
+            FileStorage storage = new FileStorage(out.resolve("blocks-" + threads + ".dat").toString(), threads);
+            for (int r = 0; r < rounds; r++) {
+                long t0 = System.nanoTime();
+                storage.saveUsers(data);
+                save[r] = System.nanoTime() - t0;
+                System.gc();
+                t0 = System.nanoTime();
+                Map<String, User> loaded = storage.loadUsers();
+                load[r] = System.nanoTime() - t0;
+                if (loaded.size() != data.size()) {
+                    throw new IllegalStateException("Loaded " + loaded.size() + " users, expected " + data.size());
+                }
+            }
+            row(String.valueOf(threads), save, load, storage.dataFileBytes());
+        }
+    }
+
+    private static Map<String, User> generate(int users, int txPerUser) {
+        Random rnd = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        Map<String, User> data = new HashMap<>();
+        for (int u = 0; u < users; u++) {
+            Wallet w = new Wallet();
+            for (int b = 0; b < 5; b++) {
+                w.setBudget(category(b), BigDecimal.valueOf(1_000 + rnd.nextInt(50_000)));
+            }
+            for (int i = 0; i < txPerUser; i++) {
+                TransactionType type = rnd.nextInt(5) == 0 ? TransactionType.INCOME : TransactionType.EXPENSE;
+                w.add(new Transaction(type, category(rnd.nextInt(20)), BigDecimal.valueOf(100 + rnd.nextInt(500_000), 2),
+                        start.plusMinutes(i * 60L + rnd.nextInt(60)), rnd.nextInt(4) == 0 ? "note " + rnd.nextInt(1_000) : ""));
+            }
+            // Настоящий хэш не нужен: на формат снимка влияет только длина строки
+            String login = "user" + u;
+            data.put(login, new User(login, "pbkdf2-sha256$120000$" + "x".repeat(22) + "$" + "y".repeat(43), w));
+        }
+        return data;
+    }
+
+    private static String category(int k) {
+        return String.format(Locale.ROOT, "Cat%03d", k + 1);
+    }
+
+    private static void row(String name, long[] save, long[] load, long bytes) {
+        System.out.println(String.format(Locale.ROOT, "%8s %10.1f %10.1f %9.1f MB",
+                name, median(save) / 1e6, median(load) / 1e6, bytes / (1024.0 * 1024.0)));
+    }
+
+    private static long median(long[] v) {
+        long[] s = v.clone();
+        Arrays.sort(s);
+        return s[s.length / 2];
+    }
+}